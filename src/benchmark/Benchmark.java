@@ -0,0 +1,160 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+/**
+ * A single benchmark, and the harness that times it.
+ * 
+ * Each benchmark runs for a number of warmup iterations, so the JIT has compiled the code 
+ * being measured, and then for a number of timed iterations of fixed length. The result is 
+ * the time per operation, with its spread across the timed iterations.
+ */
+
+public abstract class Benchmark
+{
+    /** Results are folded in here, so the JIT can't remove the work being measured */
+    public static volatile int sink;
+    
+    /** Name, matched by -filter */
+    public final String name;
+    
+    /** What one operation does */
+    public final String operation;
+    
+    public Benchmark(String name, String operation)
+    {
+        this.name = name;
+        this.operation = operation;
+    }
+    
+    /**
+     * Prepare the benchmark. Called once, before any timing.
+     */
+    
+    public void setup()
+    {
+    }
+    
+    /**
+     * Run one operation.
+     * 
+     * @return  Any value depending on the result of the operation
+     */
+    
+    public abstract int op();
+    
+    /**
+     * Time the benchmark and print the result.
+     * 
+     * @param warmup        Number of warmup iterations
+     * @param iterations    Number of timed iterations
+     * @param millis        Length of each iteration
+     */
+    
+    public final void measure(int warmup, int iterations, int millis)
+    {
+        setup();
+        
+        for (int i = 0; i < warmup; i++)
+            iteration(millis);
+        
+        double[] results = new double[iterations];
+        double sum = 0, min = Double.MAX_VALUE;
+        
+        for (int i = 0; i < iterations; i++)
+        {
+            results[i] = iteration(millis);
+            sum += results[i];
+            min = Math.min(min, results[i]);
+        }
+        
+        double mean = sum / iterations;
+        double variance = 0;
+        
+        for (int i = 0; i < iterations; i++)
+            variance += (results[i] - mean) * (results[i] - mean);
+        
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        
+        System.out.println(pad(name, 28) + 
+                           pad(format(mean), 14) + " +- " + pad(format(error), 12) + 
+                           " (min " + format(min) + ") ns/op    " + operation);
+    }
+    
+    /**
+     * Run operations for a fixed length of time.
+     * 
+     * @param millis    Length of iteration
+     * 
+     * @return          Nanoseconds per operation
+     */
+    
+    private final double iteration(int millis)
+    {
+        long length = millis * 1000000L;
+        long start = System.nanoTime();
+        long elapsed;
+        int ops = 0;
+        int result = 0;
+        
+        do
+        {
+            result += op();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        }
+        while (elapsed < length);
+        
+        sink += result;
+        
+        return (double) elapsed / ops;
+    }
+    
+    private final static String format(double d)
+    {
+        return Long.toString(Math.round(d));
+    }
+    
+    private final static String pad(String s, int width)
+    {
+        StringBuffer sb = new StringBuffer(s);
+        
+        while (sb.length() < width)
+            sb.append(' ');
+        
+        return sb.toString();
+    }
+}
@@ -0,0 +1,395 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+/**
+ * Benchmark suite for the Z80, VDP and PSG hot paths, and for whole frames.
+ * 
+ * Everything runs on the headless platform from ROMs built by TestRom, so results can be 
+ * reproduced anywhere.
+ * 
+ * Usage: Benchmarks [-filter <name>] [-warmup <n>] [-iterations <n>] [-time <ms>] 
+ *                   [-profile fast|accurate]
+ */
+
+public class Benchmarks
+{
+    /** Default number of warmup and timed iterations */
+    public final static int 
+        DEFAULT_WARMUP = 5,
+        DEFAULT_ITERATIONS = 5;
+    
+    /** Default length of an iteration in milliseconds */
+    public final static int DEFAULT_TIME = 1000;
+    
+    public static void main(String[] args)
+    {
+        // Must be selected before the emulator classes are initialised
+        Profile.select(JavaGear.getArgumentValue(args, "-profile"));
+        
+        String filter = JavaGear.getArgumentValue(args, "-filter");
+        int warmup = getIntArgument(args, "-warmup", DEFAULT_WARMUP);
+        int iterations = getIntArgument(args, "-iterations", DEFAULT_ITERATIONS);
+        int time = getIntArgument(args, "-time", DEFAULT_TIME);
+        
+        System.out.println(Profile.NAMES[Profile.get()] + " profile, " + warmup + " warmup and " + 
+                           iterations + " timed iterations of " + time + "ms");
+        
+        Benchmark[] suite = createSuite();
+        
+        for (int i = 0; i < suite.length; i++)
+        {
+            if (filter == null || suite[i].name.indexOf(filter) != -1)
+                suite[i].measure(warmup, iterations, time);
+        }
+    }
+    
+    private static int getIntArgument(String[] args, String arg, int defaultValue)
+    {
+        try
+        {
+            String value = JavaGear.getArgumentValue(args, arg);
+            
+            if (value != null)
+                return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {}
+        
+        return defaultValue;
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Suite
+    // --------------------------------------------------------------------------------------------
+    
+    private static Benchmark[] createSuite()
+    {
+        return new Benchmark[]
+        {
+            // Z80 instruction mixes, one frame of cycles per operation
+            new Z80Benchmark("z80.alu", 
+                new byte[0],
+                new byte[] 
+                {
+                    (byte) 0x80, (byte) 0x91, (byte) 0xA2, (byte) 0xAB,     // ADD A,B / SUB C / AND D / XOR E
+                    (byte) 0xB4, (byte) 0xBD, 0x3C, 0x05,                   // OR H / CP L / INC A / DEC B
+                    (byte) 0xCE, 0x13, (byte) 0xDE, 0x07,                   // ADC A,$13 / SBC A,7
+                    0x2F, 0x27, 0x09, 0x1B                                  // CPL / DAA / ADD HL,BC / DEC DE
+                }),
+            
+            new Z80Benchmark("z80.ldir", 
+                new byte[0],
+                new byte[] 
+                {
+                    0x21, 0x00, (byte) 0xC0,                                // LD HL,$C000
+                    0x11, 0x00, (byte) 0xD0,                                // LD DE,$D000
+                    0x01, 0x00, 0x04,                                       // LD BC,$0400
+                    (byte) 0xED, (byte) 0xB0                                // LDIR
+                }),
+            
+            new Z80Benchmark("z80.indexed",
+                new byte[0],
+                new byte[] 
+                {
+                    (byte) 0xDD, 0x21, 0x00, (byte) 0xC1,                   // LD IX,$C100
+                    (byte) 0xFD, 0x21, 0x00, (byte) 0xC2,                   // LD IY,$C200
+                    (byte) 0xDD, 0x7E, 0x01,                                // LD A,(IX+1)
+                    (byte) 0xFD, (byte) 0x86, 0x02,                         // ADD A,(IY+2)
+                    (byte) 0xDD, 0x77, 0x03,                                // LD (IX+3),A
+                    (byte) 0xFD, 0x34, 0x04,                                // INC (IY+4)
+                    (byte) 0xDD, 0x23, (byte) 0xFD, 0x2B,                   // INC IX / DEC IY
+                    (byte) 0xDD, 0x7E, (byte) 0xFE,                         // LD A,(IX-2)
+                    (byte) 0xFD, 0x77, 0x05,                                // LD (IY+5),A
+                    (byte) 0xDD, (byte) 0xCB, 0x02, 0x46,                   // BIT 0,(IX+2)
+                    (byte) 0xFD, (byte) 0xCB, 0x03, (byte) 0xC6             // SET 0,(IY+3)
+                }),
+            
+            new Z80Benchmark("z80.bitops",
+                new byte[] 
+                {
+                    0x21, 0x00, (byte) 0xC3                                 // LD HL,$C300
+                },
+                new byte[] 
+                {
+                    (byte) 0xCB, 0x47, (byte) 0xCB, (byte) 0xC8,            // BIT 0,A / SET 1,B
+                    (byte) 0xCB, (byte) 0x91, (byte) 0xCB, 0x02,            // RES 2,C / RLC D
+                    (byte) 0xCB, 0x3B, (byte) 0xCB, 0x1F,                   // SRL E / RR A
+                    (byte) 0xCB, 0x7E, (byte) 0xCB, (byte) 0xDE,            // BIT 7,(HL) / SET 3,(HL)
+                    (byte) 0xCB, (byte) 0x8E, (byte) 0xCB, 0x26             // RES 1,(HL) / SLA (HL)
+                }),
+            
+            // VDP, 192 lines per operation
+            new DrawBenchmark("vdp.drawLine.plain", 0, 0, false, 0),
+            new DrawBenchmark("vdp.drawLine.scroll", 37, 13, false, 0),
+            new DrawBenchmark("vdp.drawLine.flip", 0, 0, true, 0),
+            new DrawBenchmark("vdp.drawLine.sprites", 0, 0, false, 64),
+            new DrawBenchmark("vdp.drawLine.all", 37, 13, true, 64),
+            
+            // VDP tile decoding
+            new DecodeBenchmark("vdp.decodeTiles.full", TOTAL_TILES),
+            new DecodeBenchmark("vdp.decodeTiles.partial", 16),
+            
+            // PSG
+            new Benchmark("psg.update", "one frame of samples")
+            {
+                private Engine engine;
+                
+                public void setup()
+                {
+                    engine = createEngine(TestRom.loop(new byte[0], new byte[0], 0));
+                    
+                    // All four channels on
+                    int[] writes = 
+                    {
+                        0x8E, 0x0F, 0x90,   // Tone 0 = $0FE, Volume 0 = max
+                        0xA5, 0x03, 0xB2,   // Tone 1 = $035
+                        0xC1, 0x01, 0xD4,   // Tone 2 = $011
+                        0xE4, 0xF6          // White noise, Volume 3
+                    };
+                    
+                    for (int i = 0; i < writes.length; i++)
+                        engine.psg.write(writes[i]);
+                }
+                
+                public int op()
+                {
+                    engine.psg.update(engine.audioBuffer, 0, engine.samplesPerFrame);
+                    return engine.audioBuffer[engine.samplesPerFrame - 1];
+                }
+            },
+            
+            // Whole frames
+            new Benchmark("frame", "emulateNextFrame()")
+            {
+                private Engine engine;
+                
+                public void setup()
+                {
+                    engine = createEngine(TestRom.frameTest());
+                }
+                
+                public int op()
+                {
+                    engine.emulateNextFrame();
+                    return engine.display[engine.display.length / 2];
+                }
+            },
+        };
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Helpers
+    // --------------------------------------------------------------------------------------------
+    
+    /** Number of tiles in VRAM */
+    private final static int TOTAL_TILES = 512;
+    
+    /**
+     * Create an SMS with a ROM loaded, as Engine.initRom() would.
+     * 
+     * @param rom   ROM
+     * 
+     * @return      Engine
+     */
+    
+    public static Engine createEngine(TestRom rom)
+    {
+        Engine engine = new Engine(null);
+        engine.initHardware();
+        engine.setSMS();
+        engine.z80.resetMemory(rom.pages());
+        engine.reset();
+        engine.vdp.forceFullRedraw();
+        
+        return engine;
+    }
+    
+    /**
+     * Write VDP registers and VRAM as the frame test ROM does.
+     */
+    
+    private static void setupVdp(Vdp vdp, int hscroll, int vscroll, boolean flip, int sprites)
+    {
+        for (int i = 0; i < TestRom.VDP_REGS.length; i++)
+            writeRegister(vdp, i, TestRom.VDP_REGS[i]);
+        
+        writeRegister(vdp, 8, hscroll);
+        writeRegister(vdp, 9, vscroll);
+        
+        writeVdp(vdp, 0xC000, TestRom.palette());
+        writeVdp(vdp, 0x4000, TestRom.tiles(1));
+        writeVdp(vdp, 0x7800, TestRom.names(flip));
+        writeVdp(vdp, 0x7F00, TestRom.sat(sprites));
+    }
+    
+    private static void writeRegister(Vdp vdp, int reg, int value)
+    {
+        vdp.controlWrite(value);
+        vdp.controlWrite(0x80 | reg);
+    }
+    
+    private static void writeVdp(Vdp vdp, int address, byte[] data)
+    {
+        vdp.controlWrite(address & 0xFF);
+        vdp.controlWrite(address >> 8);
+        
+        for (int i = 0; i < data.length; i++)
+            vdp.dataWrite(data[i] & 0xFF);
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Benchmarks
+    // --------------------------------------------------------------------------------------------
+    
+    /**
+     * Run a loop of instructions for a frame's worth of cycles.
+     */
+    
+    private static class Z80Benchmark extends Benchmark
+    {
+        /** Copies of the loop body, so the loop branch doesn't dominate */
+        private final static int REPEAT = 16;
+        
+        private final byte[] setup, body;
+        private Engine engine;
+        private int cycles;
+        
+        public Z80Benchmark(String name, byte[] setup, byte[] body)
+        {
+            super(name, "one frame of Z80 cycles");
+            this.setup = setup;
+            this.body = body;
+        }
+        
+        public void setup()
+        {
+            engine = createEngine(TestRom.loop(setup, body, REPEAT));
+            cycles = engine.cyclesPerLine * engine.no_of_scanlines;
+        }
+        
+        public int op()
+        {
+            engine.z80.run(cycles, 0);
+            return engine.z80.tstates;
+        }
+    }
+    
+    /**
+     * Draw the 192 lines of the active display.
+     */
+    
+    private static class DrawBenchmark extends Benchmark
+    {
+        private final int hscroll, vscroll, sprites;
+        private final boolean flip;
+        private Engine engine;
+        
+        public DrawBenchmark(String name, int hscroll, int vscroll, boolean flip, int sprites)
+        {
+            super(name, "192 lines");
+            this.hscroll = hscroll;
+            this.vscroll = vscroll;
+            this.flip = flip;
+            this.sprites = sprites;
+        }
+        
+        public void setup()
+        {
+            engine = createEngine(TestRom.loop(new byte[0], new byte[0], 0));
+            setupVdp(engine.vdp, hscroll, vscroll, flip, sprites);
+        }
+        
+        public int op()
+        {
+            for (int line = 0; line < Vdp.SMS_HEIGHT; line++)
+                engine.vdp.drawLine(line);
+            
+            return engine.display[engine.display.length - 1];
+        }
+    }
+    
+    /**
+     * Decode tiles after some have been written. With fewer than all tiles, a new value is 
+     * written to a byte of each of the tiles spread across VRAM (three port writes per tile 
+     * are included).
+     */
+    
+    private static class DecodeBenchmark extends Benchmark
+    {
+        private final int count;
+        private Engine engine;
+        
+        /** Value written, changed every operation so the tiles are marked dirty */
+        private int value;
+        
+        public DecodeBenchmark(String name, int count)
+        {
+            super(name, count + " dirty tiles");
+            this.count = count;
+        }
+        
+        public void setup()
+        {
+            engine = createEngine(TestRom.loop(new byte[0], new byte[0], 0));
+            setupVdp(engine.vdp, 0, 0, false, 0);
+        }
+        
+        public int op()
+        {
+            Vdp vdp = engine.vdp;
+            
+            if (count == TOTAL_TILES)
+            {
+                vdp.forceFullRedraw();
+            }
+            else
+            {
+                value = (value + 1) & 0xFF;
+                
+                for (int i = 0; i < count; i++)
+                {
+                    int address = 0x4000 | ((i * (TOTAL_TILES / count)) << 5);
+                    vdp.controlWrite(address & 0xFF);
+                    vdp.controlWrite(address >> 8);
+                    vdp.dataWrite(value);
+                }
+            }
+            
+            vdp.decodeTiles();
+            return vdp.VRAM[0];
+        }
+    }
+}
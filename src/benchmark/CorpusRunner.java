@@ -0,0 +1,209 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Plays each program in the ROM corpus for a number of frames on the headless platform, and 
+ * reports the frame rate, the memory allocated while emulating and a hash of every frame 
+ * drawn, so both speed and correctness can be tracked.
+ * 
+ * Usage: CorpusRunner [-frames <n>] [-warmup <n>] [-dir <directory>] [-profile fast|accurate]
+ * 
+ * Without -dir the programs are built in memory. With it, every .sms and .gg file in the 
+ * directory is played instead (e.g. the corpus as written by RomCorpus).
+ */
+
+public class CorpusRunner
+{
+    /** Default number of frames to play */
+    public final static int DEFAULT_FRAMES = 600;
+    
+    /** Default number of frames to play first, on a separate engine, to warm up the JIT */
+    public final static int DEFAULT_WARMUP = 300;
+    
+    public static void main(String[] args)
+    {
+        // Must be selected before the emulator classes are initialised
+        Profile.select(JavaGear.getArgumentValue(args, "-profile"));
+        
+        int frames = getIntArgument(args, "-frames", DEFAULT_FRAMES);
+        int warmup = getIntArgument(args, "-warmup", DEFAULT_WARMUP);
+        String dir = JavaGear.getArgumentValue(args, "-dir");
+        
+        System.out.println(Profile.NAMES[Profile.get()] + " profile, " + frames + " frames, " + 
+                           warmup + " warmup frames");
+        System.out.println("program         fps      bytes/frame  hash");
+        
+        if (dir == null)
+        {
+            for (int i = 0; i < RomCorpus.NAMES.length; i++)
+            {
+                if (warmup != 0)
+                    play(Benchmarks.createEngine(RomCorpus.create(i)), warmup);
+                
+                report(RomCorpus.NAMES[i], Benchmarks.createEngine(RomCorpus.create(i)), frames);
+            }
+        }
+        else
+        {
+            String[] files = new File(dir).list();
+            
+            if (files == null)
+            {
+                System.out.println("Can't read " + dir);
+                System.exit(1);
+            }
+            
+            java.util.Arrays.sort(files);
+            
+            for (int i = 0; i < files.length; i++)
+            {
+                String name = files[i].toLowerCase();
+                
+                if (!name.endsWith(".sms") && !name.endsWith(".gg"))
+                    continue;
+                
+                String path = new File(dir, files[i]).getPath();
+                
+                if (warmup != 0)
+                    play(loadEngine(path), warmup);
+                
+                report(files[i], loadEngine(path), frames);
+            }
+        }
+    }
+    
+    private static Engine loadEngine(String path)
+    {
+        Engine engine = new Engine(null);
+        engine.initHardware();
+        engine.initRom(path);
+        
+        return engine;
+    }
+    
+    /**
+     * Play frames without measuring anything.
+     */
+    
+    private static void play(Engine engine, int frames)
+    {
+        for (int i = 0; i < frames; i++)
+            engine.emulateNextFrame();
+    }
+    
+    /**
+     * Play frames and print the results.
+     */
+    
+    private static void report(String name, Engine engine, int frames)
+    {
+        int[] display = engine.display;
+        long hash = 0xCBF29CE484222325L;
+        long time = 0;
+        long allocated = 0;
+        
+        // Allocated by the measurement itself
+        long overhead = -(allocatedBytes() - allocatedBytes());
+        
+        for (int i = 0; i < frames; i++)
+        {
+            long startAllocated = allocatedBytes();
+            long startTime = System.nanoTime();
+            
+            engine.emulateNextFrame();
+            
+            time += System.nanoTime() - startTime;
+            allocated += allocatedBytes() - startAllocated - overhead;
+            
+            // FNV-1a over every pixel of every frame
+            for (int j = 0; j < display.length; j++)
+                hash = (hash ^ display[j]) * 0x100000001B3L;
+        }
+        
+        long fps = (frames * 1000000000L) / Math.max(1, time);
+        
+        System.out.println(pad(name, 16) + pad(Long.toString(fps), 9) + 
+                           pad(allocatedBytes() < 0 ? "n/a" : Long.toString(allocated / frames), 13) + 
+                           Long.toHexString(hash));
+    }
+    
+    /**
+     * @return  Bytes allocated by this thread so far, or -1 if the JVM can't tell us
+     */
+    
+    private static long allocatedBytes()
+    {
+        try
+        {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            
+            if (bean instanceof com.sun.management.ThreadMXBean)
+                return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        catch (Throwable t) {}
+        
+        return -1;
+    }
+    
+    private static int getIntArgument(String[] args, String arg, int defaultValue)
+    {
+        try
+        {
+            String value = JavaGear.getArgumentValue(args, arg);
+            
+            if (value != null)
+                return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {}
+        
+        return defaultValue;
+    }
+    
+    private final static String pad(String s, int width)
+    {
+        StringBuffer sb = new StringBuffer(s);
+        
+        while (sb.length() < width)
+            sb.append(' ');
+        
+        return sb.toString();
+    }
+}
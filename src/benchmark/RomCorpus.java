@@ -0,0 +1,323 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Corpus of test programs, each stressing one part of the system.
+ * 
+ * The programs are built by TestRom, so they are identical on every build and can be checked 
+ * in or regenerated freely. CorpusRunner plays them; this class can also write them out as 
+ * .sms files.
+ * 
+ * Usage: RomCorpus <directory>
+ */
+
+public class RomCorpus
+{
+    /** Program names, used as file names */
+    public final static String[] NAMES =
+    {
+        "vram",
+        "sprites",
+        "psg",
+        "banks",
+        "raster",
+        "game"
+    };
+    
+    public static void main(String[] args)
+    {
+        if (args.length != 1)
+        {
+            System.out.println("Usage: RomCorpus <directory>");
+            System.exit(1);
+        }
+        
+        File dir = new File(args[0]);
+        dir.mkdirs();
+        
+        for (int i = 0; i < NAMES.length; i++)
+        {
+            File file = new File(dir, NAMES[i] + ".sms");
+            
+            try
+            {
+                FileOutputStream out = new FileOutputStream(file);
+                out.write(create(i).image());
+                out.close();
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error writing " + file + ": " + e.getMessage());
+                System.exit(1);
+            }
+            
+            System.out.println("Wrote " + file);
+        }
+    }
+    
+    /**
+     * Build a program.
+     * 
+     * @param index     Index into NAMES
+     * 
+     * @return          ROM
+     */
+    
+    public static TestRom create(int index)
+    {
+        switch (index)
+        {
+            case 0: return vram();
+            case 1: return sprites();
+            case 2: return psg();
+            case 3: return banks();
+            case 4: return raster();
+            case 5: return TestRom.frameTest();
+        }
+        
+        throw new IllegalArgumentException("No program " + index);
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Programs
+    // --------------------------------------------------------------------------------------------
+    
+    /** Address of main loop, after the screen setup */
+    private final static int MAIN = 0x0100;
+    
+    /** Address of interrupt handler */
+    private final static int HANDLER = 0x0400;
+    
+    /** Free ROM after the screen data */
+    private final static int DATA = 0x3A00;
+    
+    /**
+     * Stream 8K of tiles to VRAM through port $BE, alternating between two sets of patterns 
+     * so every write changes VRAM.
+     */
+    
+    private static TestRom vram()
+    {
+        TestRom r = new TestRom();
+        r.header(MAIN);
+        r.screen(TestRom.VDP_REGS);
+        
+        int loop = r.here();
+        r.vdpAddress(0x4000);
+        r.otir(0x4000, 0xBE, 0x2000);
+        r.vdpAddress(0x4000);
+        r.otir(TestRom.DATA_TILES, 0xBE, 0x2000);
+        r.jp(loop);
+        
+        return r.data(0x4000, TestRom.tiles(2));
+    }
+    
+    /**
+     * Rewrite the whole sprite attribute table over and over, with 64 8x16 sprites.
+     */
+    
+    private static TestRom sprites()
+    {
+        int[] regs = (int[]) TestRom.VDP_REGS.clone();
+        regs[1] |= 0x02;
+        
+        TestRom r = new TestRom();
+        r.header(MAIN);
+        r.screen(regs);
+        
+        int loop = r.here();
+        r.dw(0x3A, 0xC000);             // LD A,(count)
+        r.db(0x3C);                     // INC A
+        r.dw(0x32, 0xC000);             // LD (count),A
+        
+        r.vdpAddress(0x7F00);           // Y positions, kept above $C0
+        r.dw(0x3A, 0xC000);
+        r.db(0x06, 64);                 // LD B,64
+        int y = r.here();
+        r.db(0xD3, 0xBE);               // OUT ($BE),A
+        r.db(0xC6, 0x05);               // ADD A,5
+        r.db(0xE6, 0xBF);               // AND $BF
+        r.djnz(y);
+        
+        r.vdpAddress(0x7F80);           // X positions and patterns
+        r.dw(0x3A, 0xC000);
+        r.db(0x06, 128);                // LD B,128
+        int xn = r.here();
+        r.db(0xD3, 0xBE);               // OUT ($BE),A
+        r.db(0xC6, 0x07);               // ADD A,7
+        r.djnz(xn);
+        
+        return r.jp(loop);
+    }
+    
+    /**
+     * Write the PSG through port $7F continuously: tones, volumes and noise on every channel.
+     */
+    
+    private static TestRom psg()
+    {
+        TestRom r = new TestRom();
+        r.header(MAIN);
+        r.screen(TestRom.VDP_REGS);
+        
+        int loop = r.here();
+        r.otir(DATA, 0x7F, 0x100);
+        r.jp(loop);
+        
+        byte[] data = new byte[0x100];
+        
+        for (int i = 0; i < 64; i++)
+        {
+            int channel = (i & 3) << 5;
+            
+            data[i * 4] = (byte) (0x80 | channel | (i & 0x0F));        // Tone / noise latch
+            data[i * 4 + 1] = (byte) ((i * 3) & 0x3F);                  // Tone data
+            data[i * 4 + 2] = (byte) (0x90 | channel | (i & 0x0F));    // Volume
+            data[i * 4 + 3] = (byte) (0xE0 | (i & 0x07));               // Noise control
+        }
+        
+        return r.data(DATA, data);
+    }
+    
+    /**
+     * Page banks through $FFFD-$FFFF and call code in each one, and page cartridge RAM in and 
+     * out through $FFFC.
+     */
+    
+    private static TestRom banks()
+    {
+        final int BANKS = 8;
+        
+        TestRom r = new TestRom(BANKS * 0x4000);
+        r.header(MAIN);
+        r.screen(TestRom.VDP_REGS);
+        
+        int loop = r.here();
+        
+        for (int bank = 1; bank < BANKS; bank++)
+        {
+            r.db(0x3E, bank);           // LD A,bank
+            r.dw(0x32, 0xFFFF);         // LD ($FFFF),A: slot 2
+            r.call(0x8000);
+            
+            r.db(0x3E, BANKS - bank);   // LD A,bank
+            r.dw(0x32, 0xFFFE);         // LD ($FFFE),A: slot 1
+            r.dw(0x3A, 0x4001);         // LD A,($4001)
+            r.dw(0x32, 0xC101);         // LD ($C101),A
+        }
+        
+        r.db(0x3E, 0x08);               // Cartridge RAM in slot 2
+        r.dw(0x32, 0xFFFC);
+        r.dw(0x3A, 0xC100);             // LD A,($C100)
+        r.dw(0x32, 0x8000);             // LD ($8000),A
+        r.dw(0x3A, 0x8001);             // LD A,($8001)
+        r.db(0x3C);                     // INC A
+        r.dw(0x32, 0x8001);             // LD ($8001),A
+        r.db(0xAF);                     // XOR A
+        r.dw(0x32, 0xFFFC);             // ROM in slot 2
+        r.jp(loop);
+        
+        // Routine at the start of each bank, called from slot 2
+        for (int bank = 1; bank < BANKS; bank++)
+        {
+            r.org(bank * 0x4000);
+            r.db(0x3E, bank);           // LD A,bank
+            r.dw(0x21, 0xC100);         // LD HL,$C100
+            r.db(0x86);                 // ADD A,(HL)
+            r.db(0x77);                 // LD (HL),A
+            r.db(0xC9);                 // RET
+        }
+        
+        return r;
+    }
+    
+    /**
+     * Line interrupt on every line, changing the horizontal scroll each time.
+     */
+    
+    private static TestRom raster()
+    {
+        int[] regs = (int[]) TestRom.VDP_REGS.clone();
+        regs[10] = 0x00;
+        
+        TestRom r = new TestRom();
+        r.header(MAIN);
+        r.screen(regs);
+        
+        r.db(0xFB);                     // EI
+        int main = r.here();
+        r.db(0x76);                     // HALT
+        r.jr(main);
+        
+        r.org(0x0038);
+        r.jp(HANDLER);
+        r.org(HANDLER);
+        
+        r.db(0xF5);                     // PUSH AF
+        r.db(0xDB, 0xBF);               // IN A,($BF)
+        r.db(0x07);                     // RLCA: frame interrupt in carry
+        int jump = r.here();
+        r.db(0x38, 0x00);               // JR C,frame
+        
+        r.dw(0x3A, 0xC000);             // Line: LD A,(scroll)
+        r.db(0xC6, 0x03);               // ADD A,3
+        r.dw(0x32, 0xC000);             // LD (scroll),A
+        r.db(0xD3, 0xBF);
+        r.vdpControl(0x88);             // Horizontal scroll
+        int exit = r.here();
+        r.db(0xF1);                     // POP AF
+        r.db(0xFB);                     // EI
+        r.db(0xED, 0x4D);               // RETI
+        
+        int frame = r.here();
+        r.dw(0x3A, 0xC001);             // Frame: LD A,(phase)
+        r.db(0x3C);                     // INC A
+        r.dw(0x32, 0xC001);             // LD (phase),A
+        r.dw(0x32, 0xC000);             // LD (scroll),A
+        r.jr(exit);
+        
+        // Patch JR C
+        r.org(jump);
+        r.db(0x38, frame - (jump + 2));
+        
+        return r;
+    }
+}
@@ -0,0 +1,483 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+/**
+ * Builds small Z80 programs as ROM images, so benchmarks don't depend on commercial ROMs.
+ * 
+ * Code is assembled by hand into a 64K cartridge image, with a few helpers for the addresses 
+ * and loops. Data (tiles, name table, sprites, palette) comes from a fixed seed, so every 
+ * build of a ROM is identical.
+ */
+
+public class TestRom
+{
+    /** Default size of a ROM image */
+    public final static int ROM_SIZE = 0x10000;
+    
+    /** Top of stack used by every program */
+    public final static int STACK = 0xDFF0;
+    
+    /** ROM image */
+    private final byte[] rom;
+    
+    /** Current assembly address */
+    private int pc;
+    
+    public TestRom()
+    {
+        this(ROM_SIZE);
+    }
+    
+    /**
+     * @param size  Size of ROM image, a multiple of 16K
+     */
+    
+    public TestRom(int size)
+    {
+        rom = new byte[size];
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Assembly
+    // --------------------------------------------------------------------------------------------
+    
+    /**
+     * @return  Current assembly address
+     */
+    
+    public final int here()
+    {
+        return pc;
+    }
+    
+    /**
+     * Set the assembly address.
+     * 
+     * @param address   Address
+     */
+    
+    public final TestRom org(int address)
+    {
+        pc = address;
+        return this;
+    }
+    
+    public final TestRom db(int a)
+    {
+        rom[pc++] = (byte) a;
+        return this;
+    }
+    
+    public final TestRom db(int a, int b)
+    {
+        return db(a).db(b);
+    }
+    
+    public final TestRom db(int a, int b, int c)
+    {
+        return db(a).db(b).db(c);
+    }
+    
+    public final TestRom db(int a, int b, int c, int d)
+    {
+        return db(a).db(b).db(c).db(d);
+    }
+    
+    /**
+     * Emit an opcode followed by a 16-bit little endian operand.
+     * 
+     * @param opcode    Opcode (prefixed opcodes are given as 0xDD21 etc.)
+     * @param nn        Operand
+     */
+    
+    public final TestRom dw(int opcode, int nn)
+    {
+        if (opcode > 0xFF)
+            db(opcode >> 8);
+        
+        return db(opcode & 0xFF, nn & 0xFF, nn >> 8);
+    }
+    
+    /**
+     * Copy data into the ROM.
+     * 
+     * @param address   Address
+     * @param data      Data to copy
+     */
+    
+    public final TestRom data(int address, byte[] data)
+    {
+        System.arraycopy(data, 0, rom, address, data.length);
+        return this;
+    }
+    
+    /** JP nn */
+    public final TestRom jp(int address)
+    {
+        return dw(0xC3, address);
+    }
+    
+    /** CALL nn */
+    public final TestRom call(int address)
+    {
+        return dw(0xCD, address);
+    }
+    
+    /** JR e (to an address already assembled) */
+    public final TestRom jr(int address)
+    {
+        return db(0x18, address - (pc + 2));
+    }
+    
+    /** JR NZ,e (to an address already assembled) */
+    public final TestRom jrnz(int address)
+    {
+        return db(0x20, address - (pc + 2));
+    }
+    
+    /** DJNZ e (to an address already assembled) */
+    public final TestRom djnz(int address)
+    {
+        return db(0x10, address - (pc + 2));
+    }
+    
+    /**
+     * Write a byte to the VDP control port: LD A,n / OUT ($BF),A
+     */
+    
+    public final TestRom vdpControl(int value)
+    {
+        return db(0x3E, value, 0xD3, 0xBF);
+    }
+    
+    /**
+     * Set the VDP address: the VDP expects the low byte first.
+     * 
+     * @param address   Address, including the command in the upper bits
+     */
+    
+    public final TestRom vdpAddress(int address)
+    {
+        return vdpControl(address & 0xFF).vdpControl(address >> 8);
+    }
+    
+    /**
+     * Copy data from ROM to a port, 256 bytes at a time.
+     * 
+     * LD HL,source / LD C,port / LD D,blocks / loop: LD B,0 / OTIR / DEC D / JR NZ,loop
+     * 
+     * @param source    Source address (in the first 48K)
+     * @param port      Port
+     * @param length    Length, a multiple of 256 or less than 256
+     */
+    
+    public final TestRom otir(int source, int port, int length)
+    {
+        dw(0x21, source);
+        db(0x0E, port);
+        
+        if (length < 0x100)
+            return db(0x06, length).db(0xED, 0xB3);
+        
+        db(0x16, length >> 8);
+        int loop = here();
+        db(0x06, 0x00);
+        db(0xED, 0xB3);
+        db(0x15);
+        return jrnz(loop);
+    }
+    
+    /**
+     * @return  ROM split into pages, as loaded by Engine.loadROM()
+     */
+    
+    public final byte[][] pages()
+    {
+        byte[][] pages = new byte[rom.length / Setup.PAGE_SIZE][Setup.PAGE_SIZE];
+        
+        for (int i = 0; i < pages.length; i++)
+            System.arraycopy(rom, i * Setup.PAGE_SIZE, pages[i], 0, Setup.PAGE_SIZE);
+        
+        return pages;
+    }
+    
+    /**
+     * @return  ROM image
+     */
+    
+    public final byte[] image()
+    {
+        return rom;
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Programs
+    // --------------------------------------------------------------------------------------------
+    
+    /** Data locations used by screen() */
+    public final static int
+        DATA_TILES   = 0x1000,  // 256 tiles
+        DATA_NAMES   = 0x3000,  // 32x28 name table
+        DATA_SAT     = 0x3800,  // Sprite attribute table
+        DATA_PALETTE = 0x3900,  // 32 colours
+        DATA_REGS    = 0x3920;  // VDP register writes
+    
+    /** VDP register values used by the test ROMs: mode 4, 192 lines, display on */
+    public final static int[] VDP_REGS =
+    {
+        0x36, 0xE0, 0xFF, 0xFF, 0xFF, 0xFF, 0xFB, 0x00, 0x00, 0x00, 0xFF
+    };
+    
+    /** First free address after the data used by screen() */
+    public final static int DATA_END = 0x3980;
+    
+    /**
+     * Start a program: DI / IM 1 / LD SP,STACK / JP start, with an empty NMI handler.
+     * 
+     * @param start     Address of main code
+     */
+    
+    public final TestRom header(int start)
+    {
+        org(0x0000);
+        db(0xF3);
+        db(0xED, 0x56);
+        dw(0x31, STACK);
+        jp(start);
+        
+        org(0x0066);
+        db(0xED, 0x45);
+        
+        return org(start);
+    }
+    
+    /**
+     * Program that runs a block of instructions over and over, with interrupts disabled.
+     * 
+     * @param setup     Instructions run once
+     * @param body      Instructions in the loop
+     * @param repeat    Number of copies of body in the loop
+     */
+    
+    public static TestRom loop(byte[] setup, byte[] body, int repeat)
+    {
+        TestRom r = new TestRom();
+        r.header(0x0100);
+        
+        r.data(r.here(), setup);
+        r.org(r.here() + setup.length);
+        
+        int loop = r.here();
+        
+        for (int i = 0; i < repeat; i++)
+        {
+            r.data(r.here(), body);
+            r.org(r.here() + body.length);
+        }
+        
+        return r.jp(loop);
+    }
+    
+    /**
+     * Set up the screen: VDP registers, palette, tiles, name table and sprites. The data is
+     * placed from 0x1000 up to DATA_END in the ROM, which must be left free.
+     * 
+     * @param regs      VDP register values
+     */
+    
+    public final TestRom screen(int[] regs)
+    {
+        otir(DATA_REGS, 0xBF, regs.length * 2);
+        vdpAddress(0xC000);
+        otir(DATA_PALETTE, 0xBE, 32);
+        vdpAddress(0x4000);
+        otir(DATA_TILES, 0xBE, 0x2000);
+        vdpAddress(0x7800);
+        otir(DATA_NAMES, 0xBE, 0x700);
+        vdpAddress(0x7F00);
+        otir(DATA_SAT, 0xBE, 0x100);
+        
+        byte[] data = new byte[regs.length * 2];
+        for (int i = 0; i < regs.length; i++)
+        {
+            data[i * 2] = (byte) regs[i];
+            data[i * 2 + 1] = (byte) (0x80 | i);
+        }
+        
+        data(DATA_REGS, data);
+        data(DATA_PALETTE, palette());
+        data(DATA_TILES, tiles(1));
+        data(DATA_NAMES, names(false));
+        return data(DATA_SAT, sat(64));
+    }
+    
+    /**
+     * Program that behaves like a simple game: set up the screen, then wait for VBlank with 
+     * HALT. Each frame interrupt scrolls the screen, moves 64 sprites and changes a PSG tone.
+     */
+    
+    public static TestRom frameTest()
+    {
+        TestRom r = new TestRom();
+        r.header(0x0100);
+        r.screen(VDP_REGS);
+        
+        // EI / loop: HALT / JR loop
+        r.db(0xFB);
+        int main = r.here();
+        r.db(0x76);
+        r.jr(main);
+        
+        // Frame interrupt
+        r.org(0x0038);
+        r.jp(0x0200);
+        r.org(0x0200);
+        
+        r.db(0xF5, 0xC5);               // PUSH AF / PUSH BC
+        r.db(0xDB, 0xBF);               // IN A,($BF) acknowledges the interrupt
+        
+        r.dw(0x3A, 0xC000);             // LD A,(frame)
+        r.db(0x3C);                     // INC A
+        r.dw(0x32, 0xC000);             // LD (frame),A
+        
+        r.db(0xD3, 0xBF);               // Horizontal scroll = frame
+        r.vdpControl(0x88);
+        
+        r.vdpAddress(0x7F00);           // Sprite Y positions
+        r.dw(0x3A, 0xC000);
+        r.db(0x06, 64);                 // LD B,64
+        int sprites = r.here();
+        r.db(0xD3, 0xBE);               // OUT ($BE),A
+        r.db(0xC6, 0x03);               // ADD A,3
+        r.db(0xE6, 0x7F);               // AND $7F
+        r.djnz(sprites);
+        
+        r.dw(0x3A, 0xC000);             // Tone 0 = frame
+        r.db(0xE6, 0x0F);               // AND $0F
+        r.db(0xF6, 0x80);               // OR $80
+        r.db(0xD3, 0x7F);
+        r.db(0x3E, 0x05, 0xD3, 0x7F);
+        r.db(0x3E, 0x90, 0xD3, 0x7F);   // Volume 0 = max
+        
+        r.db(0xC1, 0xF1);               // POP BC / POP AF
+        r.db(0xFB);                     // EI
+        r.db(0xED, 0x4D);               // RETI
+        
+        return r;
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Data
+    // --------------------------------------------------------------------------------------------
+    
+    /**
+     * @return  32 colours (background and sprite palettes)
+     */
+    
+    public static byte[] palette()
+    {
+        byte[] data = new byte[32];
+        
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ((i * 13) & 0x3F);
+        
+        return data;
+    }
+    
+    /**
+     * @param seed  Random seed
+     * 
+     * @return      Patterns for 256 tiles
+     */
+    
+    public static byte[] tiles(int seed)
+    {
+        byte[] data = new byte[256 * 32];
+        int r = seed;
+        
+        for (int i = 0; i < data.length; i++)
+        {
+            r = r * 1103515245 + 12345;
+            data[i] = (byte) (r >> 16);
+        }
+        
+        return data;
+    }
+    
+    /**
+     * @param flip  Set the horizontal and vertical flip bits on some entries
+     * 
+     * @return      32x28 name table
+     */
+    
+    public static byte[] names(boolean flip)
+    {
+        byte[] data = new byte[32 * 28 * 2];
+        
+        for (int i = 0; i < data.length / 2; i++)
+        {
+            data[i * 2] = (byte) i;
+            data[i * 2 + 1] = (byte) (flip ? ((i * 7) & 0x06) : 0);
+        }
+        
+        return data;
+    }
+    
+    /**
+     * @param count Number of sprites
+     * 
+     * @return      Sprite attribute table, spread so no line has more than eight sprites
+     */
+    
+    public static byte[] sat(int count)
+    {
+        byte[] data = new byte[256];
+        
+        for (int i = 0; i < 64; i++)
+        {
+            data[i] = (byte) (i < count ? (i * 3) & 0x7F : 0xE0);
+            data[0x80 + i * 2] = (byte) (i * 4);
+            data[0x80 + i * 2 + 1] = (byte) i;
+        }
+        
+        // Terminate the list
+        if (count < 64)
+            data[count] = (byte) 0xD0;
+        
+        return data;
+    }
+}
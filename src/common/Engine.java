@@ -1,4 +1,3 @@
-import javax.swing.*;
 import java.util.Random;
 import java.io.*;
 
@@ -73,7 +72,7 @@ public class Engine extends Platform
         K_MENU = 0x80;
     
     /** Previous key pressed */
-    private static int key;
+    private int key;
     
     /** Platform specific keycode (for redefining keys) */
     public static int keyCode;
@@ -86,7 +85,7 @@ public class Engine extends Platform
     private Thread thread;
     
     /** Is thread running? */
-    public static boolean running;
+    public boolean running;
     
     /** Random number generator */
     private static Random rnd = new Random();
@@ -119,7 +118,7 @@ public class Engine extends Platform
     private final static int CLOCK_PAL = 3546893;
     
     /** CPU Cycles per scanline */
-    public static int cyclesPerLine;
+    public int cyclesPerLine;
     
     /** Reference to Z80 CPU */
     public Z80 z80;
@@ -134,13 +133,16 @@ public class Engine extends Platform
     public Ports ports;
     
     /** No of scanlines to render (including blanking) */
-    public static int no_of_scanlines;
+    public int no_of_scanlines;
 
     /** Emulated screen pixels */
-    public final static int display[] = new int[Vdp.SMS_WIDTH * Vdp.SMS_HEIGHT];
+    public final int display[] = new int[Vdp.SMS_WIDTH * Vdp.SMS_HEIGHT];
     
     /** Reference to display to render */
-    public static int render[];
+    public int render[];
+    
+    /** Preferred NTSC / PAL timing, applied on reset */
+    public static int videoMode = Vdp.NTSC;
     
     /** Render every FRAMESKIP frames */
     public static int frameSkip = DEFAULT_FRAMESKIP;
@@ -158,16 +160,16 @@ public class Engine extends Platform
     private int frameskip_counter;
     
     /** SMS Pause button pressed? */
-    private static boolean pause_button;
+    private boolean pause_button;
     
     /** Length of time each rendered frame should take to execute */
     private int targetFrameTime;
     
     /** SMS Mode */
-    public static boolean is_sms = true;
+    public boolean is_sms = true;
     
     /** GG Mode */
-    public static boolean is_gg  = false; 
+    public boolean is_gg  = false; 
 
     // --------------------------------------------------------------------------------------------
     // Audio Related
@@ -176,14 +178,14 @@ public class Engine extends Platform
     /** Sound Enabled */
     public static boolean soundEnabled = SUPPORTS_SOUND;
     
-    /** Audio buffer */
-    private byte[] audioBuffer;
+    /** Audio buffer (samplesPerFrame samples, filled by emulateNextFrame) */
+    public byte[] audioBuffer;
     
     /** Offset into audio buffer */
     private int audioBufferOffset;
     
     /** Number of samples to generate per frame */
-    public static int samplesPerFrame;
+    public int samplesPerFrame;
     
     /** How many samples to generate per line */
     private int[] samplesPerLine;
@@ -222,11 +224,7 @@ public class Engine extends Platform
     {           
         consoleClear();
         consolePrint("INITIALIZING...", true);        
-        vdp = new Vdp(display);
-        if (SUPPORTS_SOUND)
-            psg = new SN76489();
-        ports = new Ports(vdp, psg);
-        z80 = new Z80(ports);       
+        initHardware();
 
         // Load Saved Settings
         loadSettings(); 
@@ -263,13 +261,25 @@ public class Engine extends Platform
         uiState = UI_PRESSKEY;
     }
        
+    /**
+     * Create the emulated hardware, without any UI or settings
+     */
+    public final void initHardware()
+    {
+        vdp = new Vdp(this);
+        if (SUPPORTS_SOUND)
+            psg = new SN76489();
+        ports = new Ports(this, vdp, psg);
+        z80 = new Z80(ports);
+    }
+       
     /**
      * Reset all emulation
      */
     public void reset()
     {
         // Setup Default Timing
-        setVideoTiming(Vdp.videoMode);
+        setVideoTiming(videoMode);
         
         frameCount = 0;
         frameskip_counter = frameSkip;
@@ -494,7 +504,7 @@ public class Engine extends Platform
             
             // Restore Ports
             int portLen = inData.readByte();
-            if (BuildSettings.ACCURATE == originalAccuracy)
+            if (Setup.ACCURATE == originalAccuracy)
             {
                 for (int i = 0; i < ports.ioPorts.length; i++)
                     ports.ioPorts[i] = inData.readInt();
@@ -528,7 +538,7 @@ public class Engine extends Platform
             
             resetControllers();
             
-            setVideoTiming(Vdp.videoMode);
+            setVideoTiming(vdp.videoMode);
         }
         catch (Exception e)
         {
@@ -548,7 +558,7 @@ public class Engine extends Platform
             // Write header
             outData.writeUTF(Setup.PROGRAM_NAME);
             outData.writeUTF(STATE_VERSION);
-            outData.writeBoolean(BuildSettings.ACCURATE);
+            outData.writeBoolean(Setup.ACCURATE);
             
             // Write Z80 state
             int[] z80State = z80.getState();
@@ -618,7 +628,7 @@ public class Engine extends Platform
             ByteArrayInputStream in = new ByteArrayInputStream(data);
             DataInputStream inData = new DataInputStream(in); 
              
-            Vdp.videoMode = inData.readBoolean() ? Vdp.NTSC : Vdp.PAL;
+            videoMode = inData.readBoolean() ? Vdp.NTSC : Vdp.PAL;
             scaleEnabled = inData.readBoolean();
             throttle = inData.readBoolean();
             minSleep = inData.readInt();
@@ -657,7 +667,7 @@ public class Engine extends Platform
             ByteArrayOutputStream out = new ByteArrayOutputStream(); 
             DataOutputStream outData = new DataOutputStream(out);  
     
-            outData.writeBoolean(Vdp.videoMode == Vdp.NTSC);
+            outData.writeBoolean(videoMode == Vdp.NTSC);
             outData.writeBoolean(scaleEnabled);
             outData.writeBoolean(throttle);
             outData.writeInt(minSleep);
@@ -857,10 +867,10 @@ public class Engine extends Platform
     // --------------------------------------------------------------------------------------------
 
     /** Emulated screen width */
-    public static int emuWidth;
+    public int emuWidth;
     
     /** Emulated screen height */
-    public static int emuHeight;
+    public int emuHeight;
     
     /**
      *  Set SMS Mode
@@ -871,8 +881,8 @@ public class Engine extends Platform
         is_sms = true;
         is_gg  = false;
 
-        Vdp.h_start = 0;
-        Vdp.h_end   = 32;
+        vdp.h_start = 0;
+        vdp.h_end   = 32;
         
         emuWidth = Vdp.SMS_WIDTH;
         emuHeight = Vdp.SMS_HEIGHT;
@@ -887,8 +897,8 @@ public class Engine extends Platform
         is_gg  = true;
         is_sms = false;
         
-        Vdp.h_start = 5;
-        Vdp.h_end   = 27;
+        vdp.h_start = 5;
+        vdp.h_end   = 27;
         
         emuWidth = Vdp.GG_WIDTH;
         emuHeight = Vdp.GG_HEIGHT;
@@ -929,7 +939,8 @@ public class Engine extends Platform
         
         // Add one manually here for rounding accuracy
         cyclesPerLine = (clockSpeedHz / fps / no_of_scanlines) + 1;
-        Vdp.videoMode = mode;
+        z80.setLineCycles(cyclesPerLine);
+        vdp.videoMode = mode;
         
         // Setup appropriate sound buffer
         if (SUPPORTS_SOUND)
@@ -960,8 +971,8 @@ public class Engine extends Platform
         setFrameSkip(frameSkip);
     }
 
-    public static long z80Time;
-    public static long drawTime; 
+    public long z80Time;
+    public long drawTime; 
     
     private long z80TimeCounter;
     private long drawTimeCounter; 
@@ -969,17 +980,30 @@ public class Engine extends Platform
     private int frameCount;
 
     
-    private final boolean emulateNextFrame()
+    /**
+     * Emulate a single frame.
+     * 
+     * @return  true if the frame was rendered (not skipped)
+     */
+    public final boolean emulateNextFrame()
     {   
-        // Draw one frame
-        for (int lineno = 0; lineno < no_of_scanlines; lineno++)
+        linesDone = 0;
+        soundLine = 0;
+        audioBufferOffset = 0;
+        
+        // Emulate one frame, one scheduled event at a time
+        while (linesDone < no_of_scanlines)
         {   
-            long startTime;
-                 
-            if (Setup.DEBUG_TIMING) startTime = System.currentTimeMillis();          
+            long startTime = 0, drawStart = 0;
+            
+            if (Setup.DEBUG_TIMING) 
+            {
+                startTime = System.currentTimeMillis();
+                drawStart = drawTimeCounter;
+            }
             
             // ------------------------------------------------------------------------------------
-            // Run Z80
+            // Run Z80 until the end of the next line with an event scheduled
             //
             // Ensure interrupts always occur, and vblank is taken between instructions
             // If the IRQ status flag is set *during* the execution of an instruction the 
@@ -990,46 +1014,40 @@ public class Engine extends Platform
             // then the value read from the I/O port will have bit 7 set.
             // ------------------------------------------------------------------------------------
             
-            if (Setup.ACCURATE_INTERRUPT_EMULATION && lineno == 193)
+            runEnd = nextEvent();
+            runStart = linesDone * cyclesPerLine;
+            
+            int cycles = (runEnd + 1) * cyclesPerLine - runStart;
+            
+            if (Setup.ACCURATE_INTERRUPT_EMULATION && runEnd == VBLANK_LINE)
             {
-                z80.run(cyclesPerLine, 8);  // Run until 8 cycles remaining
-                vdp.setVBlankFlag();        // Then set VBlank flag
-                z80.run(0, 0);              // Run for remaining 8 cycles
+                z80.run(cycles, VBLANK_CYCLES);     // Run until the VBlank flag is due
+                
+                // Still due, unless the run was cut short by a VDP write
+                if (runEnd == VBLANK_LINE)
+                {
+                    sync();
+                    vdp.setVBlankFlag();
+                }
+                
+                z80.run(0, 0);                      // Run for remaining cycles
             }
             else
             {
-                z80.run(cyclesPerLine, 0);
+                z80.run(cycles, 0);
             }
             
-            if (Setup.DEBUG_TIMING) z80TimeCounter += System.currentTimeMillis() - startTime;
+            if (Setup.DEBUG_TIMING) 
+                z80TimeCounter += System.currentTimeMillis() - startTime - (drawTimeCounter - drawStart);
 
-            // ------------------------------------------------------------------------------------
-            // PSG
-            // ------------------------------------------------------------------------------------
-            
-            if (Platform.SUPPORTS_SOUND && Engine.soundEnabled)
-                updateSound(lineno);
-            
-            // ------------------------------------------------------------------------------------
-            // VDP
-            // ------------------------------------------------------------------------------------
-            
-            vdp.line = lineno;
-            
-            // Draw Next Line
-            if (frameskip_counter == 0 && lineno < 192)
-            {
-                if (Setup.DEBUG_TIMING) startTime = System.currentTimeMillis();             
-                vdp.drawLine(lineno);               
-                if (Setup.DEBUG_TIMING) drawTimeCounter += System.currentTimeMillis() - startTime;
-            } 
-                        
-            // Assert Interrupt Line if Necessary
-            vdp.interrupts(lineno);
+            endLines(runEnd);
         }
-
+        
         if (SUPPORTS_SOUND && soundEnabled)
+        {
+            syncSound();
             audioOutput(audioBuffer);
+        }
         
         // Reset framecount once we've drawn 60 frames per second
         if (Setup.DEBUG_TIMING && ++frameCount == 60)
@@ -1115,15 +1133,140 @@ public class Engine extends Platform
         }
     }
     
-    private final void updateSound(int line)
+    // --------------------------------------------------------------------------------------------
+    // Event Scheduling
+    //
+    // The Z80 runs until the end of the next line where the VDP could raise an interrupt, rather 
+    // than stopping at every line. The work due at the end of each line in between (rendering, 
+    // sound and the VDP line counter) is caught up lazily, whenever the Z80 touches the VDP or PSG,
+    // and once the run is over. A line belongs to the run in which its instructions start, as 
+    // before, so the results are the same as running one line at a time.
+    // --------------------------------------------------------------------------------------------
+    
+    /** Line during which the VBlank flag is set with accurate interrupt emulation */
+    private final static int VBLANK_LINE = 193;
+    
+    /** Cycles before the end of VBLANK_LINE at which the VBlank flag is set */
+    private final static int VBLANK_CYCLES = 8;
+    
+    /** Number of lines in this frame that have been completed */
+    private int linesDone;
+    
+    /** First line whose sound samples have not been generated */
+    private int soundLine;
+    
+    /** Cycle in frame at which the current Z80 run started */
+    private int runStart;
+    
+    /** Last line of the current Z80 run */
+    private int runEnd;
+    
+    /**
+     * Find the last line of the next Z80 run.
+     * 
+     * @return  Line at the end of which an event is due
+     */
+    private final int nextEvent()
+    {
+        // Interrupt still pending: check for it on every line, as it can be taken after EI
+        if (z80.interruptLine)
+            return linesDone;
+        
+        int line = vdp.nextInterruptLine(linesDone);
+        
+        if (Setup.ACCURATE_INTERRUPT_EMULATION && linesDone <= VBLANK_LINE && line > VBLANK_LINE)
+            line = VBLANK_LINE;
+        
+        if (line > no_of_scanlines - 1)
+            line = no_of_scanlines - 1;
+        
+        return line;
+    }
+    
+    /**
+     * Complete every line up to and including a given line.
+     * 
+     * @param last  Last line to complete
+     */
+    private final void endLines(int last)
+    {
+        for (; linesDone <= last; linesDone++)
+        {
+            int lineno = linesDone;
+            
+            vdp.line = lineno;
+            
+            // Draw Next Line
+            if (frameskip_counter == 0 && lineno < 192)
+            {
+                long startTime = 0;
+                
+                if (Setup.DEBUG_TIMING) startTime = System.currentTimeMillis();             
+                vdp.drawLine(lineno);               
+                if (Setup.DEBUG_TIMING) drawTimeCounter += System.currentTimeMillis() - startTime;
+            } 
+                        
+            // Assert Interrupt Line if Necessary
+            vdp.interrupts(lineno);
+        }
+    }
+    
+    /**
+     * Catch up with the current Z80 instruction, completing the lines that ended before it
+     * started. Called before the VDP is accessed.
+     */
+    public final void sync()
+    {
+        int last = (runStart + z80.getInstructionCycle()) / cyclesPerLine - 1;
+        
+        if (last > runEnd)
+            last = runEnd;
+        
+        endLines(last);
+    }
+    
+    /**
+     * Check the schedule again after a VDP register write, which can bring an interrupt 
+     * forward. The current run is cut short if it would otherwise miss it.
+     */
+    public final void reschedule()
+    {
+        int line = nextEvent();
+        
+        if (line < runEnd)
+        {
+            z80.shortenRun((runEnd - line) * cyclesPerLine);
+            runEnd = line;
+        }
+    }
+    
+    /**
+     * Generate the sound samples for all completed lines. Called before the PSG is written.
+     */
+    public final void syncSound()
     {
-        if (line == 0)
-            audioBufferOffset = 0;
+        sync();
+        
+        int samplesToGenerate = 0;
+        
+        for (; soundLine < linesDone; soundLine++)
+            samplesToGenerate += samplesPerLine[soundLine];
         
-        int samplesToGenerate = samplesPerLine[line];       
         psg.update(audioBuffer, audioBufferOffset, samplesToGenerate);  
         audioBufferOffset += samplesToGenerate;
     }
+    
+    /**
+     * Get the number of cycles into the current line.
+     * 
+     * @return  Cycles
+     */
+    public final int getLineCycle()
+    {
+        sync();
+        
+        return runStart + z80.getCycle() - linesDone * cyclesPerLine;
+    }
         
     
     // --------------------------------------------------------------------------------------------
@@ -1131,19 +1274,19 @@ public class Engine extends Platform
     // --------------------------------------------------------------------------------------------
     
     /** Controller 1 */
-    public static int controller1;
+    public int controller1;
     
     /** Controller 2 */
-    public static int controller2;
+    public int controller2;
     
     /** Game Gear Start Button */
-    public static int ggstart;
+    public int ggstart;
     
     /** Lightgun position */
-    public static int lightgunX, lightgunY;
+    public int lightgunX, lightgunY;
     
     /** Lightgun button pressed */
-    public static boolean lightgunClick;
+    public boolean lightgunClick;
     
     /** Lightgun is enabled */
     public static boolean lightgunEnabled;
@@ -1153,7 +1296,7 @@ public class Engine extends Platform
      *
      */
 
-    public final static void resetControllers()
+    public final void resetControllers()
     {
         // Default 0xFF = No Keys Pressed
         controller1 = 0xFF;
@@ -1175,7 +1318,7 @@ public class Engine extends Platform
      *  @param evt  Key Code
      */
 
-    public final static void keyPress(int keyCode)
+    public final void keyPress(int keyCode)
     {        
         key = keyCode;
 
@@ -1201,7 +1344,7 @@ public class Engine extends Platform
      *  @param evt  Key Code
      */
 
-    public final static void keyRelease(int keyCode)
+    public final void keyRelease(int keyCode)
     {
         if ((keyCode & K_UP) != 0)          controller1 |= 0x01;    // Up
         else if ((keyCode & K_DOWN) != 0)   controller1 |= 0x02;    // Down
@@ -1287,7 +1430,7 @@ public class Engine extends Platform
         return 0;
     }
     
-    public final static void setLightGunPos(int x, int y)
+    public final void setLightGunPos(int x, int y)
     {
         if (Setup.LIGHTGUN && is_sms && lightgunEnabled)
         {
@@ -1724,7 +1867,8 @@ public class Engine extends Platform
                                          
                 // TOGGLE NTSC/PAL
                 case 2:
-                    setVideoTiming(Vdp.videoMode ^ 1);
+                    videoMode ^= 1;
+                    setVideoTiming(videoMode);
                     updateMenuSettings();
                     break;
                     
@@ -1802,7 +1946,7 @@ public class Engine extends Platform
         { 
                  "RETURN TO MAIN MENU",
                  null,
-                 new String("VIDEO: " + (Vdp.videoMode == Vdp.NTSC ? "NTSC" : "PAL")),
+                 new String("VIDEO: " + (videoMode == Vdp.NTSC ? "NTSC" : "PAL")),
                  new String("SCALE: " + scaleEnabled).toUpperCase(),
                  new String("ROTATE: "+rotate),
                  "FRAMESKIP: " + frameSkip, 
@@ -2025,24 +2169,24 @@ public class Engine extends Platform
     private int sourceWidth, sourceHeight, sourceOffset;
     
     /** Width and height of scaled image */
-    public static int scaledWidth, scaledHeight;
+    public int scaledWidth, scaledHeight;
     
     /** Co-ordinates to render final image */
-    public static int renderX, renderY;
+    public int renderX, renderY;
     
     /** Width and height of final area to render to canvas */
-    public static int renderWidth, renderHeight;
+    public int renderWidth, renderHeight;
     
     /** Offset into final image to render (used to centre screen) */
-    public static int renderOffset;
+    public int renderOffset;
     
     /** Scaled image data */
-    public static int[] scaled;
+    public int[] scaled;
     
     public final static int SHIFT = 8;
     
     /** Screen Mode */
-    public static int screenMode;
+    public int screenMode;
     
     public final static int
         SM_NORMAL = 0,
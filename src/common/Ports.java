@@ -46,6 +46,9 @@
 
 public final class Ports
 {
+    /** Reference to owning engine (controllers, CPU, timing) */
+    private Engine engine;
+    
     /** Reference to VDP */
     private Vdp vdp;
     
@@ -75,11 +78,14 @@ public final class Ports
     /**
      *  Ports Constructor.
      *
+     *  @param e    Owning engine
      *  @param v    Vdp
+     *  @param p    PSG
      */
 
-    public Ports(Vdp v, SN76489 p)
+    public Ports(Engine e, Vdp v, SN76489 p)
     {
+        this.engine = e;
         this.vdp = v;
         this.psg = p;
     }
@@ -108,7 +114,7 @@ public final class Ports
     public final void out(int port, int value)
     {
         // Game Gear Serial Ports (do nothing for now)
-        if (Engine.is_gg && port < 0x07)
+        if (engine.is_gg && port < 0x07)
         {         
             return;
         }
@@ -157,18 +163,27 @@ public final class Ports
                 
             // 0xBE VDP Data port
             case 0x80:
+                engine.sync();
                 vdp.dataWrite(value);
                 break;
                 
             // 0xBD / 0xBF VDP Control port (Mirrored at two locations)
             case 0x81:
+                engine.sync();
                 vdp.controlWrite(value);
+                
+                // Interrupt settings may have changed
+                engine.reschedule();
                 break;
                 
             // 0x7F: PSG 
             case 0x40:
             case 0x41:
-                if (Platform.SUPPORTS_SOUND && Engine.soundEnabled) psg.write(value);
+                if (Platform.SUPPORTS_SOUND && Engine.soundEnabled) 
+                {
+                    engine.syncSound();
+                    psg.write(value);
+                }
                 break;
         }
     }
@@ -184,13 +199,13 @@ public final class Ports
     public final int in(int port)
     {
         // Game Gear Serial Ports (not fully emulated)
-        if (Engine.is_gg && port < 0x07)
+        if (engine.is_gg && port < 0x07)
         {   
             switch (port)
             {
                 // GameGear (Start Button and Nationalisation)
                 case 0x00:
-                    return (Engine.ggstart & 0xBF) | europe;
+                    return (engine.ggstart & 0xBF) | europe;
     
                 // GG Serial Communication Ports  -
                 // Return 0 for now as "OutRun" gets stuck in a loop by returning 0xFF
@@ -210,6 +225,7 @@ public final class Ports
         {    
             // 0x7E - Vertical Port
             case 0x40:
+                engine.sync();
                 return vdp.getVCount();
                 
             // 0x7F - Horizontal Port
@@ -218,10 +234,12 @@ public final class Ports
    
             // VDP Data port
             case 0x80:
+                engine.sync();
                 return vdp.dataRead();
                 
             // VDP Control port
             case 0x81:
+                engine.sync();
                 return vdp.controlRead();
             
             // 0xC0 / 0xDC - I/O Port A
@@ -234,7 +252,7 @@ public final class Ports
             // D1 : Port A DOWN pin input
             // D0 : Port A UP pin input
             case 0xC0:
-                return Engine.controller1;
+                return engine.controller1;
                 
             // 0xC1 / 0xDD - I/O Port B and Misc
             // D7 : Port B TH pin input
@@ -248,14 +266,14 @@ public final class Ports
             case 0xC1:
                 if (Setup.LIGHTGUN)
                 {
-                    if (Engine.lightgunClick)
+                    if (engine.lightgunClick)
                         lightPhaserSync();
 
-                    return (Engine.controller2 & 0x3F) | (getTH(PORT_A) != 0 ? 0x40 : 0) | (getTH(PORT_B) != 0 ? 0x80 : 0);
+                    return (engine.controller2 & 0x3F) | (getTH(PORT_A) != 0 ? 0x40 : 0) | (getTH(PORT_B) != 0 ? 0x80 : 0);
                 }
                 else
                 {
-                    return (Engine.controller2 & 0x3F) | ioPorts[0] | ioPorts[1];
+                    return (engine.controller2 & 0x3F) | ioPorts[0] | ioPorts[1];
                 }
         }
 
@@ -308,7 +326,7 @@ public final class Ports
     
     private final int getHCount()
     {        
-        int pixels = (Z80.getCycle() * Vdp.SMS_X_PIXELS) / Engine.cyclesPerLine;
+        int pixels = (engine.getLineCycle() * Vdp.SMS_X_PIXELS) / engine.cyclesPerLine;
         int v = ((pixels - 8) >> 1);
         if (v > 0x93)
             v += 0xE9 - 0x94;
@@ -332,8 +350,8 @@ public final class Ports
         int oldTH = getTH(PORT_A);
         int hc = getHCount();
         
-        int dx = Engine.lightgunX - (hc << 1);
-        int dy = Engine.lightgunY - vdp.line;
+        int dx = engine.lightgunX - (hc << 1);
+        int dy = engine.lightgunY - vdp.line;
         
         // Within 8 pixels of click on Y value
         // Within 96 pixels of click on X value
@@ -344,7 +362,7 @@ public final class Ports
             
             // TH has been toggled, update with lightgun position
             if (oldTH != getTH(PORT_A))
-                hCounter = 20 + (Engine.lightgunX >> 1);             
+                hCounter = 20 + (engine.lightgunX >> 1);             
         }
         else
         {
@@ -0,0 +1,143 @@
+/**
+ * Profile.java
+ *
+ * Accuracy profile, chosen at launch rather than at build time
+ *
+ * @author Copyright (c) 2002-2008 Chris White
+ * @version 19th May 2008
+ */
+
+ /*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+public final class Profile
+{
+    // --------------------------------------------------------------------------------------------
+    // The accuracy settings in Setup are static finals read from the selected profile when Setup 
+    // is first initialised. Once compiled, the JIT treats them as constants and removes the code 
+    // for the other profile, just as javac did when they were fixed by the build. 
+    //
+    // A profile must therefore be selected before the emulator is created. To change it later, 
+    // the emulator classes are loaded again with the new profile (see ProfileLoader on J2SE).
+    // --------------------------------------------------------------------------------------------
+    
+    /** Profiles */
+    public final static int
+        FAST = 0,
+        ACCURATE = 1;
+    
+    /** Profile names, as given on the command line or in the JAD file */
+    public final static String[] NAMES = {"fast", "accurate"};
+    
+    /** Selected profile, defaults to the one chosen by the build */
+    private static int selected = BuildSettings.ACCURATE ? ACCURATE : FAST;
+    
+    /** Set once Setup has read the profile */
+    private static boolean fixed;
+    
+    /**
+     * Select the profile to use.
+     * 
+     * @param profile   FAST or ACCURATE
+     * 
+     * @return          false if a different profile is already in use
+     */
+    
+    public static boolean select(int profile)
+    {
+        if (fixed)
+            return profile == selected;
+        
+        selected = profile;
+        return true;
+    }
+    
+    /**
+     * Select the profile to use by name.
+     * 
+     * @param name      Profile name (ignored if null or unknown)
+     * 
+     * @return          false if a different profile is already in use
+     */
+    
+    public static boolean select(String name)
+    {
+        int profile = forName(name);
+        
+        return profile == -1 || select(profile);
+    }
+    
+    /**
+     * Find a profile by name.
+     * 
+     * @param name      Profile name
+     * 
+     * @return          Profile, or -1 if unknown
+     */
+    
+    public static int forName(String name)
+    {
+        for (int i = 0; name != null && i < NAMES.length; i++)
+        {
+            if (NAMES[i].equals(name.toLowerCase()))
+                return i;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * @return          Selected profile
+     */
+    
+    public static int get()
+    {
+        return selected;
+    }
+    
+    /**
+     * Fix the profile in place. Called when Setup is initialised.
+     * 
+     * @return          Selected profile
+     */
+    
+    static int fix()
+    {
+        fixed = true;
+        return selected;
+    }
+}
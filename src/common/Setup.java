@@ -55,6 +55,16 @@ public final class Setup
     
     /** Print timing information on screen */
     public final static boolean DEBUG_TIMING = false;
+    
+    // --------------------------------------------------------------------------------------------
+    // Accuracy Profile
+    //
+    // Not a compile time constant: read from the profile selected at launch, when this class is 
+    // first initialised (see Profile).
+    // --------------------------------------------------------------------------------------------
+    
+    /** Use the accurate profile? (slower!) */
+    public final static boolean ACCURATE = Profile.fix() == Profile.ACCURATE;
         
     // --------------------------------------------------------------------------------------------
     // CPU Settings
@@ -70,7 +80,19 @@ public final class Setup
      */
     
     /** Do accurate interrupt emulation? (slower!) */
-    public final static boolean ACCURATE_INTERRUPT_EMULATION = BuildSettings.ACCURATE;
+    public final static boolean ACCURATE_INTERRUPT_EMULATION = ACCURATE;
+    
+    /** Cache basic blocks of ROM code and run each with a single cycle check (not used with
+        accurate interrupt emulation, which checks for interrupts between instructions) */
+    public final static boolean Z80_BLOCK_CACHE = true;
+    
+    /** Cache decoded instructions, with their operands, for ROM and RAM (not used with 
+        accurate interrupt emulation) */
+    public final static boolean Z80_DECODE_CACHE = true;
+    
+    /** Skip the remaining passes of loops polling the VDP or RAM once they stop changing 
+        anything (needs the block cache) */
+    public final static boolean Z80_IDLE_SKIP = true;
     
     // --------------------------------------------------------------------------------------------
     // Lightgun Mode (For the following titles)
@@ -88,7 +110,7 @@ public final class Setup
     //  Wanted
     // --------------------------------------------------------------------------------------------
     
-    public final static boolean LIGHTGUN = BuildSettings.ACCURATE;
+    public final static boolean LIGHTGUN = ACCURATE;
     
     // --------------------------------------------------------------------------------------------
     // VDP Settings
@@ -105,7 +127,7 @@ public final class Setup
     */
     
     /** Emulate hardware sprite collisions (not used by many games, and slower) */
-    public final static boolean VDP_SPRITE_COLLISIONS = BuildSettings.ACCURATE;
+    public final static boolean VDP_SPRITE_COLLISIONS = ACCURATE;
         
     // --------------------------------------------------------------------------------------------
     // Memory Settings
@@ -64,7 +64,7 @@ public final class Vdp
         PAL = 1;
     
     /** NTSC / PAL Emulation */
-    public static int videoMode = NTSC;
+    public int videoMode = NTSC;
      
     /** X Pixels, including blanking */
     public final static int SMS_X_PIXELS = 342;
@@ -155,6 +155,9 @@ public final class Vdp
     // Emulation Related
     // --------------------------------------------------------------------------------------------
     
+    /** Reference to owning engine (interrupt line, console type) */
+    private final Engine engine;
+
     /** Emulated display */
     private final int display[];
     
@@ -165,10 +168,10 @@ public final class Vdp
     private static int[] GG_JAVA1, GG_JAVA2;
     
     /** Horizontal Viewport Start */
-    public static int h_start;      
+    public int h_start;      
     
     /** Horizontal Viewport End */
-    public static int h_end;    
+    public int h_end;    
         
     // --------------------------------------------------------------------------------------------
     // Decoded SAT Table
@@ -219,12 +222,13 @@ public final class Vdp
     /**
      *  Vdp Constructor.
      *
-     *  @param d    Pointer to Generated Display
+     *  @param e    Owning engine, which supplies the generated display
      */
 
-    public Vdp(int[] d)
+    public Vdp(Engine e)
     {
-        this.display = d;
+        this.engine = e;
+        this.display = e.display;
 
         // 16K of Video RAM
         VRAM = new byte[0x4000];
@@ -273,7 +277,7 @@ public final class Vdp
         
         vScrollLatch = 0;
 
-        Z80.interruptLine = false;
+        engine.z80.interruptLine = false;
         
         isSatDirty = true;
         
@@ -339,7 +343,7 @@ public final class Vdp
         status = 0; // other bits never used anyway
 
         // Clear IRQ Line
-        Z80.interruptLine = false;
+        engine.z80.interruptLine = false;
 
         return statuscopy;
     }
@@ -385,13 +389,13 @@ public final class Vdp
                     // if the same bit is cleared.
                     case 0:
                         if (Setup.ACCURATE_INTERRUPT_EMULATION && (status & STATUS_HINT) != 0)
-                            Z80.interruptLine = (commandByte & 0x10) != 0;
+                            engine.z80.interruptLine = (commandByte & 0x10) != 0;
                         break;
                     
                     // Interrupt Control 1
                     case 1:
                         if (((status & STATUS_VINT) != 0) && (commandByte & 0x20) != 0)
-                            Z80.interruptLine = true;
+                            engine.z80.interruptLine = true;
                         
                         // By writing here we've updated the height of the sprites and need to update 
                         // the sprites on each line
@@ -489,9 +493,9 @@ public final class Vdp
             // Instead of writing real colour to CRAM, write converted Java palette colours for speed.
             // Slightly inaccurate, as CRAM doesn't contain real values, but it is never read by software.      
             case 0x03:
-                if (Engine.is_sms)
+                if (engine.is_sms)
                     CRAM[location & 0x1F] = SMS_JAVA[value & 0x3F];
-                else if (Engine.is_gg)
+                else if (engine.is_gg)
                 {
                     if ((location & 1) == 0) // first byte
                         CRAM[(location & 0x3F)>>1] = GG_JAVA1[value]; // GG
@@ -502,7 +506,7 @@ public final class Vdp
                 break;
         }
 
-        if (BuildSettings.ACCURATE)
+        if (Setup.ACCURATE)
             readBuffer = value;
         
         location++;
@@ -542,7 +546,7 @@ public final class Vdp
 
             // Line Interrupts Enabled and Pending. Assert IRQ Line.
             if (((status & STATUS_HINT) != 0) && ((vdpreg[0] & 0x10) != 0))
-                Z80.interruptLine = true;
+                engine.z80.interruptLine = true;
         }
 
         // lineno >= 193
@@ -553,14 +557,48 @@ public final class Vdp
 
             // Frame Interrupts Enabled and Pending. Assert IRQ Line.
             if (((status & STATUS_VINT) != 0) && ((vdpreg[1] & 0x20) != 0) && (lineno < 224))
-                Z80.interruptLine = true;
+                engine.z80.interruptLine = true;
             
             // Update the VSCROLL latch for the next active display period
-            if (BuildSettings.ACCURATE && lineno == Engine.no_of_scanlines - 1)
+            if (Setup.ACCURATE && lineno == engine.no_of_scanlines - 1)
                 vScrollLatch = vdpreg[9];
         }
     }
     
+    /**
+     *  Find the next scanline on which interrupts() could assert the IRQ line, assuming
+     *  the VDP registers are left alone until then.
+     *
+     *  @param  lineno  First line still to be processed
+     *
+     *  @return         Line number, or Integer.MAX_VALUE if there is none this frame
+     */
+
+    public final int nextInterruptLine(int lineno)
+    {
+        // Line Interrupts
+        if (lineno <= 192 && (vdpreg[0] & 0x10) != 0)
+        {
+            if ((status & STATUS_HINT) != 0)
+                return lineno;
+
+            if (lineno + counter <= 192)
+                return lineno + counter;
+        }
+
+        // Frame Interrupts
+        if ((vdpreg[1] & 0x20) != 0)
+        {
+            if (lineno <= 193)
+                return 193;
+
+            if (lineno < 224 && (status & STATUS_VINT) != 0)
+                return lineno;
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
     public final void setVBlankFlag()
     {
         status |= STATUS_VINT;    
@@ -577,7 +615,7 @@ public final class Vdp
         // ----------------------------------------------------------------------------------------
         // Check we are in the visible drawing region
         // ----------------------------------------------------------------------------------------
-        if (Engine.is_gg)
+        if (engine.is_gg)
         {
             if (lineno < GG_Y_OFFSET || lineno >= GG_Y_OFFSET + GG_HEIGHT)
                 return;
@@ -617,7 +655,7 @@ public final class Vdp
             // ------------------------------------------------------------------------------------
             // Blank Leftmost Column (SMS Only)
             // ------------------------------------------------------------------------------------
-            if (Engine.is_sms && (vdpreg[0] & 0x20) != 0)
+            if (engine.is_sms && (vdpreg[0] & 0x20) != 0)
             {
                 int colour = CRAM[16 + (vdpreg[7] & 0x0F)];
                 int location = lineno << 8;
@@ -648,7 +686,7 @@ public final class Vdp
         int hscroll = vdpreg[8];
         
         // Vertical Scroll
-        int vscroll = BuildSettings.ACCURATE ? vScrollLatch : vdpreg[9];
+        int vscroll = Setup.ACCURATE ? vScrollLatch : vdpreg[9];
         
         // Top Two Rows Not Affected by Horizontal Scrolling (SMS Only)
         // We don't actually need the SMS check here as we don't draw this line for GG now
@@ -894,7 +932,17 @@ public final class Vdp
        
     private final void generateConvertedPals()
     {
-        if (Engine.is_sms && SMS_JAVA == null)
+        generateConvertedPals(engine.is_sms, engine.is_gg);
+    }
+
+    /**
+     * Palettes are shared by every Vdp instance, so generate under a lock
+     * to avoid another instance seeing a partially filled table.
+     */
+    
+    private final static synchronized void generateConvertedPals(boolean is_sms, boolean is_gg)
+    {
+        if (is_sms && SMS_JAVA == null)
         {
             SMS_JAVA = new int[0x40];
             
@@ -907,7 +955,7 @@ public final class Vdp
                 SMS_JAVA[i] = ((r * 85) << 16) | ((g * 85) << 8) | (b * 85);
             }
         }
-        else if (Engine.is_gg && GG_JAVA1 == null)
+        else if (is_gg && GG_JAVA1 == null)
         {
             GG_JAVA1 = new int[0x100];
             GG_JAVA2 = new int[0x10];
@@ -955,7 +1003,7 @@ public final class Vdp
     }
     
     // Note we should try not to update the bgt/sat locations?
-    private final void decodeTiles()
+    final void decodeTiles()
     {   
         //System.out.println("["+line+"]"+" min dirty:" +minDirty+" max: "+maxDirty);
 
@@ -93,10 +93,10 @@ public final class Z80
     private boolean EI_inst;
 
     /** Interrupt Line Status */
-    public static boolean interruptLine;
+    public boolean interruptLine;
     
     /** Interrupt Vector */
-    public static int interruptVector;
+    public int interruptVector;
 
     // --------------------------------------------------------------------------------------------
     // Registers
@@ -131,7 +131,7 @@ public final class Z80
     // --------------------------------------------------------------------------------------------
     
     /** Flag Register */
-    private static int f, f2;
+    private int f, f2;
 
     /** carry (set when a standard carry occurred) */
     private final static int F_CARRY     = 0x01;    
@@ -166,10 +166,16 @@ public final class Z80
     // --------------------------------------------------------------------------------------------
 
     /** Total number of cycles we're executing for */ 
-    private static int totalCycles;
+    private int totalCycles;
     
     /** TStates remaining */
-    public static int tstates;
+    public int tstates;
+    
+    /** TStates remaining at the start of the current instruction */
+    private int opStart;
+    
+    /** Cycles per scanline */
+    private int lineCycles = Integer.MAX_VALUE;
 
     private final static short OP_STATES[] = {
 
@@ -327,11 +333,18 @@ public final class Z80
     {
         this.port = p;
         
-        // Generate flag lookups
-        generateFlagTables();
-        
-        // Pre-calculate results for DAA instruction
-        generateDAATable();
+        // Lookup tables are shared by every Z80 instance, so only generate them once
+        synchronized (Z80.class)
+        {
+            if (DAA_TABLE == null)
+            {
+                // Generate flag lookups
+                generateFlagTables();
+
+                // Pre-calculate results for DAA instruction
+                generateDAATable();
+            }
+        }
         
         // Generate memory arrays
         generateMemory();
@@ -472,6 +485,10 @@ public final class Z80
         
         if (cycles != 0) 
             totalCycles = cycles;
+        
+        // Loops are only watched within one call, where no interrupt can arrive
+        if (IDLE_SKIP)
+            idlePc = -1;
                 
         if (!Setup.ACCURATE_INTERRUPT_EMULATION)
         {
@@ -487,324 +504,418 @@ public final class Z80
                     interrupt();                    // Check for interrupt
             }
             
+            // ------------------------------------------------------------------------------------
+            // Run a cached basic block in one go if all of it fits in the remaining cycles
+            // ------------------------------------------------------------------------------------
+            if (Setup.Z80_BLOCK_CACHE && !Setup.ACCURATE_INTERRUPT_EMULATION)
+            {
+                int blocks[] = blockMap[pc >> 10];
+                
+                if (blocks != null)
+                {
+                    int block = blocks[pc & 0x3FF];
+                    
+                    if (block == 0)
+                        block = blocks[pc & 0x3FF] = decodeBlock(memReadMap[pc >> 10], pc & 0x3FF);
+                    
+                    if (tstates - ((block >> 8) & 0xFFFF) > cyclesTo)
+                    {
+                        int start = pc;
+                        
+                        runBlock(block & 0xFF);
+                        
+                        if (halt)
+                            return;
+                        
+                        if (IDLE_SKIP && (block & BLOCK_IDLE) != 0)
+                            skipIdle(start, (block >> 8) & 0xFFFF, cyclesTo);
+                        continue;
+                    }
+                }
+            }
+            
+            // ------------------------------------------------------------------------------------
+            // Run the next instruction from the decoded instruction cache
+            // ------------------------------------------------------------------------------------
+            if (Setup.Z80_DECODE_CACHE && !Setup.ACCURATE_INTERRUPT_EMULATION && runDecoded())
+            {
+                if (halt)
+                    return;
+                continue;
+            }
+            
             // ------------------------------------------------------------------------------------
             // Fetch & Interpret Opcodes
-            // Main Opcode Switch Rolled In For Speed
             // ------------------------------------------------------------------------------------
             int opcode = readMem(pc++);                    // Fetch & Interpret Opcode     
             
             if (Setup.ACCURATE_INTERRUPT_EMULATION)
                 EI_inst = false;
             
+            opStart = tstates;
             tstates -= OP_STATES[opcode];   // Decrement TStates
             
             if (Setup.REFRESH_EMULATION)
                 incR();
 
-            switch (opcode)
-            {
-                case 0x00: break;                                                   // NOP
-                case 0x01: c = readMem(pc++); b = readMem(pc++); break;             // LD BC,nn
-                case 0x02: writeMem(getBC(), a); break;                             // LD (BC),A
-                case 0x03: incBC(); break;                                          // INC BC
-                case 0x04: b = inc8(b); break;                                      // INC B
-                case 0x05: b = dec8(b); break;                                      // DEC B
-                case 0x06: b = readMem(pc++); break;                                // LD B,n
-                case 0x07: rlca_a(); break;                                         // RLCA
-                case 0x08: exAF(); break;                                           // EX AF AF'
-                case 0x09: setHL(add16(getHL(), getBC())); break;                   // ADD HL,BC
-                case 0x0A: a = readMem(getBC()); break;                             // LD A,(BC)
-                case 0x0B: decBC(); break;                                          // DEC BC
-                case 0x0C: c = inc8(c); break;                                      // INC C
-                case 0x0D: c = dec8(c); break;                                      // DEC C
-                case 0x0E: c = readMem(pc++); break;                                // LD C,n
-                case 0x0F: rrca_a(); break;                                         // RRCA
-                case 0x10: b = (b - 1) & 0xff;                                      // DJNZ (PC+e)
-                           jr(b != 0); break;
-                case 0x11: e = readMem(pc++); d = readMem(pc++); break;             // LD DE,nn
-                case 0x12: writeMem(getDE(), a); break;                             // LD (DE), A
-                case 0x13: incDE(); break;                                          // INC DE
-                case 0x14: d = inc8(d); break;                                      // INC D
-                case 0x15: d = dec8(d); break;                                      // DEC D
-                case 0x16: d = (readMem(pc++)); break;                              // LD D,n
-                case 0x17: rla_a(); break;                                          // RLA
-                case 0x18: pc+= d() +1; break;                                      // JR (PC+e)
-                case 0x19: setHL(add16(getHL(), getDE())); break;                   // ADD HL,DE
-                case 0x1A: a = readMem(getDE()); break;                             // LD A,(DE)
-                case 0x1B: decDE(); break;                                          // DEC DE
-                case 0x1C: e = inc8(e); break;                                      // INC E
-                case 0x1D: e = dec8(e); break;                                      // DEC E
-                case 0x1E: e = readMem(pc++); break;                                // LD E,N
-                case 0x1F: rra_a(); break;                                          // RRA
-                case 0x20: jr(!((f & F_ZERO) != 0)); break;                         // JR NZ,(PC+e)
-                case 0x21: l = readMem(pc++); h = readMem(pc++); break;             // LD HL,nn
-                case 0x22: {                                                        // LD (nn),HL
-                                int location = readMemWord(pc);
-                                writeMem(location, l);
-                                writeMem(++location, h);
-                                pc+=2;
-                            }
-                            break;
-                case 0x23: incHL(); break;                                          // INC HL
-                case 0x24: h = inc8(h); break;                                      // INC H
-                case 0x25: h = dec8(h); break;                                      // DEC H
-                case 0x26: h = readMem(pc++); break;                                // LD H,n
-                case 0x27: daa(); break;                                            // DAA
-                case 0x28: jr(((f & F_ZERO) != 0)); break;                          // JR Z,(PC+e)
-                case 0x29: setHL(add16(getHL(), getHL())); break;                   // ADD HL,HL
-                case 0x2A:  {
-                                int location = readMemWord(pc);
-                                l = readMem(location);
-                                h = readMem(location+1);
-                                pc+=2;          
-                            }
-                            break;
-                case 0x2B: decHL(); break;                                          // DEC HL
-                case 0x2C: l = inc8(l); break;                                      // INC L
-                case 0x2D: l = dec8(l); break;                                      // DEC L
-                case 0x2E: l = readMem(pc++); break;                                // LD L,n
-                case 0x2F: cpl_a(); break;                                          // CPL
-                case 0x30: jr(!((f & F_CARRY) != 0)); break;                        // JR NC,(PC+e)
-                case 0x31: sp = readMemWord(pc); pc+=2; break;                      // LD SP,nn
-                case 0x32: writeMem(readMemWord(pc), a); pc+=2; break;              // LD (nn),A
-                case 0x33: sp++; break;                                             // INC SP
-                case 0x34: incMem(getHL()); break;                                  // INC (HL)
-                case 0x35: decMem(getHL()); break;                                  // DEC (HL)
-                case 0x36: writeMem(getHL(), readMem(pc++)); break;                 // LD (HL),n
-                case 0x37: f |= F_CARRY; f &=~ F_NEGATIVE; f &=~ F_HALFCARRY;       // SCF
-                           break;
-                case 0x38: jr((f & F_CARRY) != 0); break;                           // JR C,(PC+e)
-                case 0x39: setHL(add16(getHL(), sp)); break;                        // ADD HL,SP
-                case 0x3A: a = readMem(readMemWord(pc)); pc+=2; break;              // LD A,(nn)
-                case 0x3B: sp--; break;                                             // DEC SP
-                case 0x3C: a = inc8(a); break;                                      // INC A
-                case 0x3D: a = dec8(a); break;                                      // DEC A
-                case 0x3E: a = readMem(pc++); break;                                // LD A,n
-                case 0x3F: ccf(); break;                                            // CCF
-                case 0x40: break;                                                   // LD B,B
-                case 0x41: b = c; break;                                            // LD B,C
-                case 0x42: b = d; break;                                            // LD B,D
-                case 0x43: b = e; break;                                            // LD B,E
-                case 0x44: b = h; break;                                            // LD B,H
-                case 0x45: b = l; break;                                            // LD B,L
-                case 0x46: b = readMem(getHL()); break;                             // LD B,(HL)
-                case 0x47: b = a; break;                                            // LD B,A
-                case 0x48: c = b; break;                                            // LD C,B
-                case 0x49: break;                                                   // LD C,C
-                case 0x4A: c = d; break;                                            // LD C,D
-                case 0x4B: c = e; break;                                            // LD C,E
-                case 0x4C: c = h; break;                                            // LD C,H
-                case 0x4D: c = l; break;                                            // LD C,L
-                case 0x4E: c = readMem(getHL()); break;                             // LD C,(HL)
-                case 0x4F: c = a; break;                                            // LD C,A
-                case 0x50: d = b; break;                                            // LD D,B
-                case 0x51: d = c; break;                                            // LD D,C
-                case 0x52: break;                                                   // LD D,D
-                case 0x53: d = e; break;                                            // LD D,E
-                case 0x54: d = h; break;                                            // LD D,H
-                case 0x55: d = l; break;                                            // LD D,L
-                case 0x56: d = readMem(getHL()); break;                             // LD D,(HL)
-                case 0x57: d = a; break;                                            // LD D,A
-                case 0x58: e = b; break;                                            // LD E,B
-                case 0x59: e = c; break;                                            // LD E,C
-                case 0x5A: e = d; break;                                            // LD E,D
-                case 0x5B: break;                                                   // LD E,E
-                case 0x5C: e = h; break;                                            // LD E,H
-                case 0x5D: e = l; break;                                            // LD E,L
-                case 0x5E: e = readMem(getHL()); break;                             // LD E,(HL)
-                case 0x5F: e = a; break;                                            // LD E,A
-                case 0x60: h = b; break;                                            // LD H,B
-                case 0x61: h = c; break;                                            // LD H,C
-                case 0x62: h = d; break;                                            // LD H,D
-                case 0x63: h = e; break;                                            // LD H,E
-                case 0x64: break;                                                   // LD H,H
-                case 0x65: h = l; break;                                            // LD H,L
-                case 0x66: h = readMem(getHL()); break;                             // LD H,(HL)
-                case 0x67: h = a; break;                                            // LD H,A
-                case 0x68: l = b; break;                                            // LD L,B
-                case 0x69: l = c; break;                                            // LD L,C
-                case 0x6A: l = d; break;                                            // LD L,D
-                case 0x6B: l = e; break;                                            // LD L,E
-                case 0x6C: l = h; break;                                            // LD L,H
-                case 0x6D: break;                                                   // LD L,L
-                case 0x6E: l = readMem(getHL()); break;                             // LD L,(HL)
-                case 0x6F: l = a; break;                                            // LD L,A
-                case 0x70: writeMem(getHL(), b); break;                             // LD (HL),B
-                case 0x71: writeMem(getHL(), c); break;                             // LD (HL),C
-                case 0x72: writeMem(getHL(), d); break;                             // LD (HL),D
-                case 0x73: writeMem(getHL(), e); break;                             // LD (HL),E
-                case 0x74: writeMem(getHL(), h); break;                             // LD (HL),H
-                case 0x75: writeMem(getHL(), l); break;                             // LD (HL),L
-                case 0x76: if (HALT_SPEEDUP) tstates = 0;
-                           halt = true; pc--; return;                               // HALT
-                case 0x77: writeMem(getHL(), a); break;                             // LD (HL),A
-                case 0x78: a = b; break;                                            // LD A,B
-                case 0x79: a = c; break;                                            // LD A,C
-                case 0x7A: a = d; break;                                            // LD A,D
-                case 0x7B: a = e; break;                                            // LD A,E
-                case 0x7C: a = h; break;                                            // LD A,H
-                case 0x7D: a = l; break;                                            // LD A,L
-                case 0x7E: a = readMem(getHL()); break;                             // LD A,(HL)
-                case 0x7F: break;                                                   // LD A,A
-                case 0x80: add_a(b); break;                                         // ADD A,B
-                case 0x81: add_a(c); break;                                         // ADD A,C
-                case 0x82: add_a(d); break;                                         // ADD A,D
-                case 0x83: add_a(e); break;                                         // ADD A,E
-                case 0x84: add_a(h); break;                                         // ADD A,H
-                case 0x85: add_a(l); break;                                         // ADD A,L
-                case 0x86: add_a(readMem(getHL())); break;                          // ADD A,(HL)
-                case 0x87: add_a(a); break;                                         // ADD A,A
-                case 0x88: adc_a(b); break;                                         // ADC A,B
-                case 0x89: adc_a(c); break;                                         // ADC A,C
-                case 0x8A: adc_a(d); break;                                         // ADC A,D
-                case 0x8B: adc_a(e); break;                                         // ADC A,E
-                case 0x8C: adc_a(h); break;                                         // ADC A,H
-                case 0x8D: adc_a(l); break;                                         // ADC A,L
-                case 0x8E: adc_a(readMem(getHL())); break;                          // ADC A,(HL)
-                case 0x8F: adc_a(a); break;                                         // ADC A,A
-                case 0x90: sub_a(b); break;                                         // SUB A,B
-                case 0x91: sub_a(c); break;                                         // SUB A,C
-                case 0x92: sub_a(d); break;                                         // SUB A,D
-                case 0x93: sub_a(e); break;                                         // SUB A,E
-                case 0x94: sub_a(h); break;                                         // SUB A,H
-                case 0x95: sub_a(l); break;                                         // SUB A,L
-                case 0x96: sub_a(readMem(getHL())); break;                          // SUB A,(HL)
-                case 0x97: sub_a(a); break;                                         // SUB A,A
-                case 0x98: sbc_a(b); break;                                         // SBC A,B
-                case 0x99: sbc_a(c); break;                                         // SBC A,C
-                case 0x9A: sbc_a(d); break;                                         // SBC A,D
-                case 0x9B: sbc_a(e); break;                                         // SBC A,E
-                case 0x9C: sbc_a(h); break;                                         // SBC A,H
-                case 0x9D: sbc_a(l); break;                                         // SBC A,L
-                case 0x9E: sbc_a(readMem(getHL())); break;                          // SBC A,(HL)
-                case 0x9F: sbc_a(a); break;                                         // SBC A,A
-                case 0xA0: f = SZP_TABLE[a &= b] | F_HALFCARRY; break;              // AND A,B
-                case 0xA1: f = SZP_TABLE[a &= c] | F_HALFCARRY; break;              // AND A,C
-                case 0xA2: f = SZP_TABLE[a &= d] | F_HALFCARRY; break;              // AND A,D
-                case 0xA3: f = SZP_TABLE[a &= e] | F_HALFCARRY; break;              // AND A,E
-                case 0xA4: f = SZP_TABLE[a &= h] | F_HALFCARRY; break;              // AND A,H
-                case 0xA5: f = SZP_TABLE[a &= l] | F_HALFCARRY; break;              // AND A,L
-                case 0xA6: f = SZP_TABLE[a &= readMem(getHL())] | F_HALFCARRY;break;// AND A,(HL)
-                case 0xA7: f = SZP_TABLE[a] | F_HALFCARRY; break;                   // AND A,A
-                case 0xA8: f = SZP_TABLE[a ^= b]; break;                            // XOR A,B
-                case 0xA9: f = SZP_TABLE[a ^= c]; break;                            // XOR A,C
-                case 0xAA: f = SZP_TABLE[a ^= d]; break;                            // XOR A,D
-                case 0xAB: f = SZP_TABLE[a ^= e]; break;                            // XOR A,E
-                case 0xAC: f = SZP_TABLE[a ^= h]; break;                            // XOR A,H
-                case 0xAD: f = SZP_TABLE[a ^= l]; break;                            // XOR A,L
-                case 0xAE: f = SZP_TABLE[a ^= readMem(getHL())]; break;             // XOR A,(HL)
-                case 0xAF: f = SZP_TABLE[a = 0]; break;                             // XOR A,A (=0)
-                case 0xB0: f = SZP_TABLE[a |= b]; break;                            // OR A,B
-                case 0xB1: f = SZP_TABLE[a |= c]; break;                            // OR A,C
-                case 0xB2: f = SZP_TABLE[a |= d]; break;                            // OR A,D
-                case 0xB3: f = SZP_TABLE[a |= e]; break;                            // OR A,E
-                case 0xB4: f = SZP_TABLE[a |= h]; break;                            // OR A,H
-                case 0xB5: f = SZP_TABLE[a |= l]; break;                            // OR A,L
-                case 0xB6: f = SZP_TABLE[a |= readMem(getHL())]; break;             // OR A,(HL)
-                case 0xB7: f = SZP_TABLE[a]; break;                                 // OR A,A
-                case 0xB8: cp_a(b); break;                                          // CP A,B
-                case 0xB9: cp_a(c); break;                                          // CP A,C
-                case 0xBA: cp_a(d); break;                                          // CP A,D
-                case 0xBB: cp_a(e); break;                                          // CP A,E
-                case 0xBC: cp_a(h); break;                                          // CP A,H
-                case 0xBD: cp_a(l); break;                                          // CP A,L
-                case 0xBE: cp_a(readMem(getHL())); break;                           // CP A,(HL)
-                case 0xBF: cp_a(a); break;                                          // CP A,A
-                case 0xC0: ret((f & F_ZERO) == 0);  break;                          // RET NZ
-                case 0xC1: setBC(readMemWord(sp)); sp+=2; break;                    // POP BC
-                case 0xC2: jp((f & F_ZERO) == 0); break;                            // JP NZ,(nn)
-                case 0xC3: pc = readMemWord(pc); break;                             // JP (nn)
-                case 0xC4: call((f & F_ZERO) == 0); break;                          // CALL NZ (nn)
-                case 0xC5: push(b, c); break;                                       // PUSH BC
-                case 0xC6: add_a(readMem(pc++)); break;                             // ADD A,n
-                case 0xC7: push(pc); pc=0x00; break;                                // RST 00H
-                case 0xC8: ret((f & F_ZERO) != 0); break;                           // RET Z
-                case 0xC9: pc = readMemWord(sp); sp+=2; break;                      // RET
-                case 0xCA: jp((f & F_ZERO) != 0); break;                            // JP Z,(nn)
-                case 0xCB: doCB(readMem(pc++)); break;                              // CB Opcode
-                case 0xCC: call((f & F_ZERO) != 0); break;                          // CALL Z (nn)
-                case 0xCD: push(pc+2); pc = readMemWord(pc); break;                 // CALL (nn)
-                case 0xCE: adc_a(readMem(pc++)); break;                             // ADC A,n
-                case 0xCF: push(pc); pc=0x08; break;                                // RST 08H
-                case 0xD0: ret((f & F_CARRY) == 0); break;                          // RET NC
-                case 0xD1: setDE(readMemWord(sp)); sp+=2; break;                    // POP DE
-                case 0xD2: jp((f & F_CARRY) == 0); break;                           // JP NC,(nn)
-                case 0xD3: port.out(readMem(pc++), a); break;                       // OUT (n),A
-                case 0xD4: call((f & F_CARRY) == 0); break;                         // CALL NC (nn)
-                case 0xD5: push(d, e); break;                                       // PUSH DE
-                case 0xD6: sub_a(readMem(pc++)); break;                             // SUB n
-                case 0xD7: push(pc); pc=0x10; break;                                // RST 10H
-                case 0xD8: ret(((f & F_CARRY) != 0)); break;                        // RET C
-                case 0xD9: exBC(); exDE(); exHL(); break;                           // EXX
-                case 0xDA: jp((f & F_CARRY) != 0); break;                           // JP C,(nn)
-                case 0xDB: a = port.in(readMem(pc++)); break;                       // IN A,(n)
-                case 0xDC: call((f & F_CARRY) != 0); break;                         // CALL C (nn)
-                case 0xDD: doIndexOpIX(readMem(pc++)); break;                       // DD Opcode
-                case 0xDE: sbc_a(readMem(pc++)); break;                             // SBC A,n
-                case 0xDF: push(pc); pc=0x18; break;                                // RST 18H
-                case 0xE0: ret((f & F_PARITY) == 0);  break;                        // RET PO
-                case 0xE1: setHL(readMemWord(sp)); sp+=2; break;                    // POP HL
-                case 0xE2: jp((f & F_PARITY) == 0); break;                          // JP PO,(nn)
-                case 0xE3:  {                                                       // EX (SP),HL
-                                int temp = h;
-                                h = readMem(sp+1);
-                                writeMem(sp+1, temp);
-                                
-                                temp = l;
-                                l = readMem(sp);
-                                writeMem(sp, temp); 
-                            } break;
-                case 0xE4: call((f & F_PARITY) == 0); break;                        // CALL PO (nn)
-                case 0xE5: push(h, l); break;                                       // PUSH HL
-                case 0xE6: f = SZP_TABLE[a &= readMem(pc++)] | F_HALFCARRY; break;  // AND (n)
-                case 0xE7: push(pc); pc=0x20; break;                                // RST 20H
-                case 0xE8: ret((f & F_PARITY) != 0); break;                         // RET PE
-                case 0xE9: pc = getHL(); break;                                     // JP (HL)
-                case 0xEA: jp((f & F_PARITY) != 0); break;                          // JP PE,(nn)
-                case 0xEB:  {                                                       // EX DE,HL
-                                int temp = d;
-                                d = h;
-                                h = temp;
-                                temp = e;
-                                e = l;
-                                l = temp;   
-                            } break;
-                case 0xEC: call((f & F_PARITY) != 0); break;                        // CALL PE (nn)
-                case 0xED: doED(readMem(pc)); break;                                // ED Opcode
-                case 0xEE: f = SZP_TABLE[a ^= readMem(pc++)]; break;                // XOR n
-                case 0xEF: push(pc); pc=0x28; break;                                // RST 28H
-                case 0xF0: ret((f & F_SIGN) == 0); break;                           // RET P
-                case 0xF1: f = readMem(sp++); a = readMem(sp++); break;             // POP AF                                               
-                case 0xF2: jp((f & F_SIGN) == 0); break;                            // JP P,(nn)
-                case 0xF3: iff1 = iff2 = false; EI_inst = true; break;              // DI
-                case 0xF4: call((f & F_SIGN) == 0);  break;                         // CALL P (nn)
-                case 0xF5: push(a, f); break;                                       // PUSH AF
-                case 0xF6: f = SZP_TABLE[a |= readMem(pc++)]; break;                // OR n
-                case 0xF7: push(pc); pc=0x30; break;                                // RST 30H
-                case 0xF8: ret((f & F_SIGN) != 0); break;                           // RET M
-                case 0xF9: sp = getHL(); break;                                     // LD SP,HL
-                case 0xFA: jp((f & F_SIGN) != 0); break;                            // JP M,(nn)
-                case 0xFB: iff1 = iff2 = EI_inst = true; break;                     // EI
-                case 0xFC: call((f & F_SIGN) != 0); break;                          // CALL M (nn)
-                case 0xFD: doIndexOpIY(readMem(pc++)); break;                       // FD Opcode
-                case 0xFE: cp_a(readMem(pc++)); break;                              // CP n
-                case 0xFF: push(pc); pc=0x38; break;                                // RST 38H
-                
-            } // end switch
+            execute(opcode);
             
+            if (halt)
+                return;
         }
     }
     
+    /**
+     *  Execute a single unprefixed opcode, once it has been fetched and its base cycles counted
+     *
+     *  @param opcode       Opcode hex value
+     */
+
+    private final void execute(int opcode)
+    {
+        switch (opcode)
+        {
+            case 0x00: break;                                                   // NOP
+            case 0x01: c = readMem(pc++); b = readMem(pc++); break;             // LD BC,nn
+            case 0x02: writeMem(getBC(), a); break;                             // LD (BC),A
+            case 0x03: incBC(); break;                                          // INC BC
+            case 0x04: b = inc8(b); break;                                      // INC B
+            case 0x05: b = dec8(b); break;                                      // DEC B
+            case 0x06: b = readMem(pc++); break;                                // LD B,n
+            case 0x07: rlca_a(); break;                                         // RLCA
+            case 0x08: exAF(); break;                                           // EX AF AF'
+            case 0x09: setHL(add16(getHL(), getBC())); break;                   // ADD HL,BC
+            case 0x0A: a = readMem(getBC()); break;                             // LD A,(BC)
+            case 0x0B: decBC(); break;                                          // DEC BC
+            case 0x0C: c = inc8(c); break;                                      // INC C
+            case 0x0D: c = dec8(c); break;                                      // DEC C
+            case 0x0E: c = readMem(pc++); break;                                // LD C,n
+            case 0x0F: rrca_a(); break;                                         // RRCA
+            case 0x10: b = (b - 1) & 0xff;                                      // DJNZ (PC+e)
+                       jr(b != 0); break;
+            case 0x11: e = readMem(pc++); d = readMem(pc++); break;             // LD DE,nn
+            case 0x12: writeMem(getDE(), a); break;                             // LD (DE), A
+            case 0x13: incDE(); break;                                          // INC DE
+            case 0x14: d = inc8(d); break;                                      // INC D
+            case 0x15: d = dec8(d); break;                                      // DEC D
+            case 0x16: d = (readMem(pc++)); break;                              // LD D,n
+            case 0x17: rla_a(); break;                                          // RLA
+            case 0x18: pc+= d() +1; break;                                      // JR (PC+e)
+            case 0x19: setHL(add16(getHL(), getDE())); break;                   // ADD HL,DE
+            case 0x1A: a = readMem(getDE()); break;                             // LD A,(DE)
+            case 0x1B: decDE(); break;                                          // DEC DE
+            case 0x1C: e = inc8(e); break;                                      // INC E
+            case 0x1D: e = dec8(e); break;                                      // DEC E
+            case 0x1E: e = readMem(pc++); break;                                // LD E,N
+            case 0x1F: rra_a(); break;                                          // RRA
+            case 0x20: jr(!((f & F_ZERO) != 0)); break;                         // JR NZ,(PC+e)
+            case 0x21: l = readMem(pc++); h = readMem(pc++); break;             // LD HL,nn
+            case 0x22: {                                                        // LD (nn),HL
+                            int location = readMemWord(pc);
+                            writeMem(location, l);
+                            writeMem(++location, h);
+                            pc+=2;
+                        }
+                        break;
+            case 0x23: incHL(); break;                                          // INC HL
+            case 0x24: h = inc8(h); break;                                      // INC H
+            case 0x25: h = dec8(h); break;                                      // DEC H
+            case 0x26: h = readMem(pc++); break;                                // LD H,n
+            case 0x27: daa(); break;                                            // DAA
+            case 0x28: jr(((f & F_ZERO) != 0)); break;                          // JR Z,(PC+e)
+            case 0x29: setHL(add16(getHL(), getHL())); break;                   // ADD HL,HL
+            case 0x2A:  {
+                            int location = readMemWord(pc);
+                            l = readMem(location);
+                            h = readMem(location+1);
+                            pc+=2;          
+                        }
+                        break;
+            case 0x2B: decHL(); break;                                          // DEC HL
+            case 0x2C: l = inc8(l); break;                                      // INC L
+            case 0x2D: l = dec8(l); break;                                      // DEC L
+            case 0x2E: l = readMem(pc++); break;                                // LD L,n
+            case 0x2F: cpl_a(); break;                                          // CPL
+            case 0x30: jr(!((f & F_CARRY) != 0)); break;                        // JR NC,(PC+e)
+            case 0x31: sp = readMemWord(pc); pc+=2; break;                      // LD SP,nn
+            case 0x32: writeMem(readMemWord(pc), a); pc+=2; break;              // LD (nn),A
+            case 0x33: sp++; break;                                             // INC SP
+            case 0x34: incMem(getHL()); break;                                  // INC (HL)
+            case 0x35: decMem(getHL()); break;                                  // DEC (HL)
+            case 0x36: writeMem(getHL(), readMem(pc++)); break;                 // LD (HL),n
+            case 0x37: f |= F_CARRY; f &=~ F_NEGATIVE; f &=~ F_HALFCARRY;       // SCF
+                       break;
+            case 0x38: jr((f & F_CARRY) != 0); break;                           // JR C,(PC+e)
+            case 0x39: setHL(add16(getHL(), sp)); break;                        // ADD HL,SP
+            case 0x3A: a = readMem(readMemWord(pc)); pc+=2; break;              // LD A,(nn)
+            case 0x3B: sp--; break;                                             // DEC SP
+            case 0x3C: a = inc8(a); break;                                      // INC A
+            case 0x3D: a = dec8(a); break;                                      // DEC A
+            case 0x3E: a = readMem(pc++); break;                                // LD A,n
+            case 0x3F: ccf(); break;                                            // CCF
+            case 0x40: break;                                                   // LD B,B
+            case 0x41: b = c; break;                                            // LD B,C
+            case 0x42: b = d; break;                                            // LD B,D
+            case 0x43: b = e; break;                                            // LD B,E
+            case 0x44: b = h; break;                                            // LD B,H
+            case 0x45: b = l; break;                                            // LD B,L
+            case 0x46: b = readMem(getHL()); break;                             // LD B,(HL)
+            case 0x47: b = a; break;                                            // LD B,A
+            case 0x48: c = b; break;                                            // LD C,B
+            case 0x49: break;                                                   // LD C,C
+            case 0x4A: c = d; break;                                            // LD C,D
+            case 0x4B: c = e; break;                                            // LD C,E
+            case 0x4C: c = h; break;                                            // LD C,H
+            case 0x4D: c = l; break;                                            // LD C,L
+            case 0x4E: c = readMem(getHL()); break;                             // LD C,(HL)
+            case 0x4F: c = a; break;                                            // LD C,A
+            case 0x50: d = b; break;                                            // LD D,B
+            case 0x51: d = c; break;                                            // LD D,C
+            case 0x52: break;                                                   // LD D,D
+            case 0x53: d = e; break;                                            // LD D,E
+            case 0x54: d = h; break;                                            // LD D,H
+            case 0x55: d = l; break;                                            // LD D,L
+            case 0x56: d = readMem(getHL()); break;                             // LD D,(HL)
+            case 0x57: d = a; break;                                            // LD D,A
+            case 0x58: e = b; break;                                            // LD E,B
+            case 0x59: e = c; break;                                            // LD E,C
+            case 0x5A: e = d; break;                                            // LD E,D
+            case 0x5B: break;                                                   // LD E,E
+            case 0x5C: e = h; break;                                            // LD E,H
+            case 0x5D: e = l; break;                                            // LD E,L
+            case 0x5E: e = readMem(getHL()); break;                             // LD E,(HL)
+            case 0x5F: e = a; break;                                            // LD E,A
+            case 0x60: h = b; break;                                            // LD H,B
+            case 0x61: h = c; break;                                            // LD H,C
+            case 0x62: h = d; break;                                            // LD H,D
+            case 0x63: h = e; break;                                            // LD H,E
+            case 0x64: break;                                                   // LD H,H
+            case 0x65: h = l; break;                                            // LD H,L
+            case 0x66: h = readMem(getHL()); break;                             // LD H,(HL)
+            case 0x67: h = a; break;                                            // LD H,A
+            case 0x68: l = b; break;                                            // LD L,B
+            case 0x69: l = c; break;                                            // LD L,C
+            case 0x6A: l = d; break;                                            // LD L,D
+            case 0x6B: l = e; break;                                            // LD L,E
+            case 0x6C: l = h; break;                                            // LD L,H
+            case 0x6D: break;                                                   // LD L,L
+            case 0x6E: l = readMem(getHL()); break;                             // LD L,(HL)
+            case 0x6F: l = a; break;                                            // LD L,A
+            case 0x70: writeMem(getHL(), b); break;                             // LD (HL),B
+            case 0x71: writeMem(getHL(), c); break;                             // LD (HL),C
+            case 0x72: writeMem(getHL(), d); break;                             // LD (HL),D
+            case 0x73: writeMem(getHL(), e); break;                             // LD (HL),E
+            case 0x74: writeMem(getHL(), h); break;                             // LD (HL),H
+            case 0x75: writeMem(getHL(), l); break;                             // LD (HL),L
+            case 0x76: if (HALT_SPEEDUP) tstates = 0;
+                       halt = true; pc--; break;                                // HALT
+            case 0x77: writeMem(getHL(), a); break;                             // LD (HL),A
+            case 0x78: a = b; break;                                            // LD A,B
+            case 0x79: a = c; break;                                            // LD A,C
+            case 0x7A: a = d; break;                                            // LD A,D
+            case 0x7B: a = e; break;                                            // LD A,E
+            case 0x7C: a = h; break;                                            // LD A,H
+            case 0x7D: a = l; break;                                            // LD A,L
+            case 0x7E: a = readMem(getHL()); break;                             // LD A,(HL)
+            case 0x7F: break;                                                   // LD A,A
+            case 0x80: add_a(b); break;                                         // ADD A,B
+            case 0x81: add_a(c); break;                                         // ADD A,C
+            case 0x82: add_a(d); break;                                         // ADD A,D
+            case 0x83: add_a(e); break;                                         // ADD A,E
+            case 0x84: add_a(h); break;                                         // ADD A,H
+            case 0x85: add_a(l); break;                                         // ADD A,L
+            case 0x86: add_a(readMem(getHL())); break;                          // ADD A,(HL)
+            case 0x87: add_a(a); break;                                         // ADD A,A
+            case 0x88: adc_a(b); break;                                         // ADC A,B
+            case 0x89: adc_a(c); break;                                         // ADC A,C
+            case 0x8A: adc_a(d); break;                                         // ADC A,D
+            case 0x8B: adc_a(e); break;                                         // ADC A,E
+            case 0x8C: adc_a(h); break;                                         // ADC A,H
+            case 0x8D: adc_a(l); break;                                         // ADC A,L
+            case 0x8E: adc_a(readMem(getHL())); break;                          // ADC A,(HL)
+            case 0x8F: adc_a(a); break;                                         // ADC A,A
+            case 0x90: sub_a(b); break;                                         // SUB A,B
+            case 0x91: sub_a(c); break;                                         // SUB A,C
+            case 0x92: sub_a(d); break;                                         // SUB A,D
+            case 0x93: sub_a(e); break;                                         // SUB A,E
+            case 0x94: sub_a(h); break;                                         // SUB A,H
+            case 0x95: sub_a(l); break;                                         // SUB A,L
+            case 0x96: sub_a(readMem(getHL())); break;                          // SUB A,(HL)
+            case 0x97: sub_a(a); break;                                         // SUB A,A
+            case 0x98: sbc_a(b); break;                                         // SBC A,B
+            case 0x99: sbc_a(c); break;                                         // SBC A,C
+            case 0x9A: sbc_a(d); break;                                         // SBC A,D
+            case 0x9B: sbc_a(e); break;                                         // SBC A,E
+            case 0x9C: sbc_a(h); break;                                         // SBC A,H
+            case 0x9D: sbc_a(l); break;                                         // SBC A,L
+            case 0x9E: sbc_a(readMem(getHL())); break;                          // SBC A,(HL)
+            case 0x9F: sbc_a(a); break;                                         // SBC A,A
+            case 0xA0: f = SZP_TABLE[a &= b] | F_HALFCARRY; break;              // AND A,B
+            case 0xA1: f = SZP_TABLE[a &= c] | F_HALFCARRY; break;              // AND A,C
+            case 0xA2: f = SZP_TABLE[a &= d] | F_HALFCARRY; break;              // AND A,D
+            case 0xA3: f = SZP_TABLE[a &= e] | F_HALFCARRY; break;              // AND A,E
+            case 0xA4: f = SZP_TABLE[a &= h] | F_HALFCARRY; break;              // AND A,H
+            case 0xA5: f = SZP_TABLE[a &= l] | F_HALFCARRY; break;              // AND A,L
+            case 0xA6: f = SZP_TABLE[a &= readMem(getHL())] | F_HALFCARRY;break;// AND A,(HL)
+            case 0xA7: f = SZP_TABLE[a] | F_HALFCARRY; break;                   // AND A,A
+            case 0xA8: f = SZP_TABLE[a ^= b]; break;                            // XOR A,B
+            case 0xA9: f = SZP_TABLE[a ^= c]; break;                            // XOR A,C
+            case 0xAA: f = SZP_TABLE[a ^= d]; break;                            // XOR A,D
+            case 0xAB: f = SZP_TABLE[a ^= e]; break;                            // XOR A,E
+            case 0xAC: f = SZP_TABLE[a ^= h]; break;                            // XOR A,H
+            case 0xAD: f = SZP_TABLE[a ^= l]; break;                            // XOR A,L
+            case 0xAE: f = SZP_TABLE[a ^= readMem(getHL())]; break;             // XOR A,(HL)
+            case 0xAF: f = SZP_TABLE[a = 0]; break;                             // XOR A,A (=0)
+            case 0xB0: f = SZP_TABLE[a |= b]; break;                            // OR A,B
+            case 0xB1: f = SZP_TABLE[a |= c]; break;                            // OR A,C
+            case 0xB2: f = SZP_TABLE[a |= d]; break;                            // OR A,D
+            case 0xB3: f = SZP_TABLE[a |= e]; break;                            // OR A,E
+            case 0xB4: f = SZP_TABLE[a |= h]; break;                            // OR A,H
+            case 0xB5: f = SZP_TABLE[a |= l]; break;                            // OR A,L
+            case 0xB6: f = SZP_TABLE[a |= readMem(getHL())]; break;             // OR A,(HL)
+            case 0xB7: f = SZP_TABLE[a]; break;                                 // OR A,A
+            case 0xB8: cp_a(b); break;                                          // CP A,B
+            case 0xB9: cp_a(c); break;                                          // CP A,C
+            case 0xBA: cp_a(d); break;                                          // CP A,D
+            case 0xBB: cp_a(e); break;                                          // CP A,E
+            case 0xBC: cp_a(h); break;                                          // CP A,H
+            case 0xBD: cp_a(l); break;                                          // CP A,L
+            case 0xBE: cp_a(readMem(getHL())); break;                           // CP A,(HL)
+            case 0xBF: cp_a(a); break;                                          // CP A,A
+            case 0xC0: ret((f & F_ZERO) == 0);  break;                          // RET NZ
+            case 0xC1: setBC(readMemWord(sp)); sp+=2; break;                    // POP BC
+            case 0xC2: jp((f & F_ZERO) == 0); break;                            // JP NZ,(nn)
+            case 0xC3: pc = readMemWord(pc); break;                             // JP (nn)
+            case 0xC4: call((f & F_ZERO) == 0); break;                          // CALL NZ (nn)
+            case 0xC5: push(b, c); break;                                       // PUSH BC
+            case 0xC6: add_a(readMem(pc++)); break;                             // ADD A,n
+            case 0xC7: push(pc); pc=0x00; break;                                // RST 00H
+            case 0xC8: ret((f & F_ZERO) != 0); break;                           // RET Z
+            case 0xC9: pc = readMemWord(sp); sp+=2; break;                      // RET
+            case 0xCA: jp((f & F_ZERO) != 0); break;                            // JP Z,(nn)
+            case 0xCB: doCB(readMem(pc++)); break;                              // CB Opcode
+            case 0xCC: call((f & F_ZERO) != 0); break;                          // CALL Z (nn)
+            case 0xCD: push(pc+2); pc = readMemWord(pc); break;                 // CALL (nn)
+            case 0xCE: adc_a(readMem(pc++)); break;                             // ADC A,n
+            case 0xCF: push(pc); pc=0x08; break;                                // RST 08H
+            case 0xD0: ret((f & F_CARRY) == 0); break;                          // RET NC
+            case 0xD1: setDE(readMemWord(sp)); sp+=2; break;                    // POP DE
+            case 0xD2: jp((f & F_CARRY) == 0); break;                           // JP NC,(nn)
+            case 0xD3: port.out(readMem(pc++), a); break;                       // OUT (n),A
+            case 0xD4: call((f & F_CARRY) == 0); break;                         // CALL NC (nn)
+            case 0xD5: push(d, e); break;                                       // PUSH DE
+            case 0xD6: sub_a(readMem(pc++)); break;                             // SUB n
+            case 0xD7: push(pc); pc=0x10; break;                                // RST 10H
+            case 0xD8: ret(((f & F_CARRY) != 0)); break;                        // RET C
+            case 0xD9: exBC(); exDE(); exHL(); break;                           // EXX
+            case 0xDA: jp((f & F_CARRY) != 0); break;                           // JP C,(nn)
+            case 0xDB: a = port.in(readMem(pc++)); break;                       // IN A,(n)
+            case 0xDC: call((f & F_CARRY) != 0); break;                         // CALL C (nn)
+            case 0xDD: doIndexOpIX(readMem(pc++)); break;                       // DD Opcode
+            case 0xDE: sbc_a(readMem(pc++)); break;                             // SBC A,n
+            case 0xDF: push(pc); pc=0x18; break;                                // RST 18H
+            case 0xE0: ret((f & F_PARITY) == 0);  break;                        // RET PO
+            case 0xE1: setHL(readMemWord(sp)); sp+=2; break;                    // POP HL
+            case 0xE2: jp((f & F_PARITY) == 0); break;                          // JP PO,(nn)
+            case 0xE3:  {                                                       // EX (SP),HL
+                            int temp = h;
+                            h = readMem(sp+1);
+                            writeMem(sp+1, temp);
+                            
+                            temp = l;
+                            l = readMem(sp);
+                            writeMem(sp, temp); 
+                        } break;
+            case 0xE4: call((f & F_PARITY) == 0); break;                        // CALL PO (nn)
+            case 0xE5: push(h, l); break;                                       // PUSH HL
+            case 0xE6: f = SZP_TABLE[a &= readMem(pc++)] | F_HALFCARRY; break;  // AND (n)
+            case 0xE7: push(pc); pc=0x20; break;                                // RST 20H
+            case 0xE8: ret((f & F_PARITY) != 0); break;                         // RET PE
+            case 0xE9: pc = getHL(); break;                                     // JP (HL)
+            case 0xEA: jp((f & F_PARITY) != 0); break;                          // JP PE,(nn)
+            case 0xEB:  {                                                       // EX DE,HL
+                            int temp = d;
+                            d = h;
+                            h = temp;
+                            temp = e;
+                            e = l;
+                            l = temp;   
+                        } break;
+            case 0xEC: call((f & F_PARITY) != 0); break;                        // CALL PE (nn)
+            case 0xED: doED(readMem(pc)); break;                                // ED Opcode
+            case 0xEE: f = SZP_TABLE[a ^= readMem(pc++)]; break;                // XOR n
+            case 0xEF: push(pc); pc=0x28; break;                                // RST 28H
+            case 0xF0: ret((f & F_SIGN) == 0); break;                           // RET P
+            case 0xF1: f = readMem(sp++); a = readMem(sp++); break;             // POP AF                                               
+            case 0xF2: jp((f & F_SIGN) == 0); break;                            // JP P,(nn)
+            case 0xF3: iff1 = iff2 = false; EI_inst = true; break;              // DI
+            case 0xF4: call((f & F_SIGN) == 0);  break;                         // CALL P (nn)
+            case 0xF5: push(a, f); break;                                       // PUSH AF
+            case 0xF6: f = SZP_TABLE[a |= readMem(pc++)]; break;                // OR n
+            case 0xF7: push(pc); pc=0x30; break;                                // RST 30H
+            case 0xF8: ret((f & F_SIGN) != 0); break;                           // RET M
+            case 0xF9: sp = getHL(); break;                                     // LD SP,HL
+            case 0xFA: jp((f & F_SIGN) != 0); break;                            // JP M,(nn)
+            case 0xFB: iff1 = iff2 = EI_inst = true; break;                     // EI
+            case 0xFC: call((f & F_SIGN) != 0); break;                          // CALL M (nn)
+            case 0xFD: doIndexOpIY(readMem(pc++)); break;                       // FD Opcode
+            case 0xFE: cp_a(readMem(pc++)); break;                              // CP n
+            case 0xFF: push(pc); pc=0x38; break;                                // RST 38H
+            
+        } // end switch
+    }
+    
     /**
      * Get current cycle number
      * 
      * @return  Cycle number
      */
     
-    public static int getCycle()
+    public final int getCycle()
     {
         return totalCycles - tstates;
     }
+    
+    /**
+     * Get the cycle number at which the current instruction started
+     * 
+     * @return  Cycle number
+     */
+    
+    public final int getInstructionCycle()
+    {
+        return totalCycles - opStart;
+    }
+    
+    /**
+     * Cut the current run short, when an event has been brought forward
+     * 
+     * @param cycles    Number of cycles to remove from the run
+     */
+    
+    public final void shortenRun(int cycles)
+    {
+        // Cycle numbers are unaffected
+        tstates -= cycles;
+        totalCycles -= cycles;
+        
+        breakBlock = true;
+        
+        if (IDLE_SKIP)
+            idlePc = -1;
+    }
+    
+    /**
+     * Set the length of a scanline. Runs can span several lines, and idle loops are only
+     * skipped up to the end of the current one.
+     * 
+     * @param cycles    Cycles per line
+     */
+    
+    public final void setLineCycles(int cycles)
+    {
+        lineCycles = cycles;
+    }
 
     /**
      *  Generate Non Maskable Interrupt (NMI)
@@ -3057,6 +3168,567 @@ public final class Z80
         return parity;
     }
     
+    // --------------------------------------------------------------------------------------------
+    // BASIC BLOCK CACHE
+    //
+    // Straight-line runs of ROM code are decoded once into a block, keyed on the 1K ROM page and
+    // offset it starts at. A block ends on the first instruction that can change the flow of
+    // execution, and records the fixed cost of everything before it. run() uses that cost to
+    // execute the whole block with a single cycle check. Instructions are still fetched and
+    // executed one by one, so results are identical to stepping through them.
+    // --------------------------------------------------------------------------------------------
+    
+    /** Maximum number of instructions in a block */
+    private final static int MAX_BLOCK_LENGTH = 0xFF;
+    
+    /** 
+     * Length of unprefixed opcodes that can be part of a block.
+     * 0 marks opcodes that end a block: jumps, calls, returns, HALT and the DD/ED/FD prefixes.
+     */
+    private final static byte BLOCK_OP_LENGTH[] = {
+
+                                        /*          0  1  2  3  4  5  6  7  8  9  A  B  C  D  E  F */
+                                        /* 0x00 */  1, 3, 1, 1, 1, 1, 2, 1, 1, 1, 1, 1, 1, 1, 2, 1,
+                                        /* 0x10 */  0, 3, 1, 1, 1, 1, 2, 1, 0, 1, 1, 1, 1, 1, 2, 1,
+                                        /* 0x20 */  0, 3, 3, 1, 1, 1, 2, 1, 0, 1, 3, 1, 1, 1, 2, 1,
+                                        /* 0x30 */  0, 3, 3, 1, 1, 1, 2, 1, 0, 1, 3, 1, 1, 1, 2, 1,
+                                        /* 0x40 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x50 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x60 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x70 */  1, 1, 1, 1, 1, 1, 0, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x80 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x90 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xA0 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xB0 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xC0 */  0, 1, 0, 0, 0, 1, 2, 0, 0, 0, 0, 2, 0, 0, 2, 0,
+                                        /* 0xD0 */  0, 1, 0, 2, 0, 1, 2, 0, 0, 1, 0, 2, 0, 0, 2, 0,
+                                        /* 0xE0 */  0, 1, 0, 1, 0, 1, 2, 0, 0, 0, 0, 1, 0, 0, 2, 0,
+                                        /* 0xF0 */  0, 1, 0, 1, 0, 1, 2, 0, 0, 1, 0, 1, 0, 0, 2, 0 };
+    
+    /** Decoded blocks for each 1K ROM page, indexed by offset (0 = not decoded yet) */
+    private int romBlocks[][];
+    
+    /** Block table for each 1K position in the memory map (null where RAM/SRAM is mapped) */
+    private int blockMap[][] = new int[65][];
+    
+    /** Set by page() or shortenRun(), so a running block stops once memory has been remapped 
+        or the cycles it was checked against have changed */
+    private boolean breakBlock;
+    
+    /** Block flag: no instruction in the block has a side effect if repeated */
+    private final static int BLOCK_IDLE = 0x1000000;
+    
+    /**
+     *  Decode the basic block starting at a position in a ROM page.
+     *  
+     *  Only the opcode byte is needed to size an unprefixed instruction, so operands may run 
+     *  into the next page. A CB opcode needs its second byte to be costed, and a block stops 
+     *  before any instruction that starts outside this page.
+     *
+     *  @param page         ROM page
+     *  @param offset       Offset of first instruction
+     *
+     *  @return             Number of instructions | fixed cycles of all but the last << 8,
+     *                      plus BLOCK_IDLE if the block could be an idle loop
+     */
+
+    private final int decodeBlock(byte[] page, int offset)
+    {
+        int count = 0;
+        int cycles = 0;
+        boolean idle = IDLE_SKIP;
+
+        while (true)
+        {
+            int opcode = page[offset] & 0xFF;
+            int length = BLOCK_OP_LENGTH[opcode];
+            
+            if (idle)
+                idle = isIdleOp(page, offset, opcode);
+            
+            // Last instruction of block: its cost doesn't need to be known up front
+            if (++count == MAX_BLOCK_LENGTH || length == 0 || offset + length >= Setup.PAGE_SIZE)
+            {
+                // Only a block ending in a jump can loop on itself
+                if (length != 0)
+                    idle = false;
+                break;
+            }
+            
+            cycles += OP_STATES[opcode];
+            
+            if (opcode == 0xCB)
+                cycles += OP_CB_STATES[page[offset + 1] & 0xFF];
+
+            offset += length;
+        }
+        
+        return count | (cycles << 8) | (idle ? BLOCK_IDLE : 0);
+    }
+    
+    /**
+     *  Run a decoded block without checking the remaining cycles between instructions.
+     *
+     *  @param count        Number of instructions in block
+     */
+
+    private final void runBlock(int count)
+    {
+        breakBlock = false;
+        
+        do
+        {
+            if (!Setup.Z80_DECODE_CACHE || !runDecoded())
+            {
+                int opcode = readMem(pc++);
+                opStart = tstates;
+                tstates -= OP_STATES[opcode];
+                
+                if (Setup.REFRESH_EMULATION)
+                    incR();
+                
+                execute(opcode);
+            }
+        }
+        while (--count != 0 && !breakBlock);
+    }
+    
+    /**
+     *  Get the block table for a ROM page, creating it the first time the page is mapped.
+     *
+     *  @param p            1K ROM page
+     *
+     *  @return             Block table
+     */
+
+    private final int[] getBlocks(int p)
+    {
+        int blocks[] = romBlocks[p];
+        
+        if (blocks == null)
+            blocks = romBlocks[p] = new int[Setup.PAGE_SIZE];
+        
+        return blocks;
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // IDLE LOOP DETECTION
+    //
+    // Games often spin on the VDP status, the V counter or a RAM flag until an interrupt comes 
+    // along. Such a loop is a block that jumps back to its own start. Its instructions can't 
+    // write to memory or ports, and a repeated status read changes nothing after the first. 
+    // If two passes in a row leave the registers unchanged, every later pass in the same call
+    // to run() will do the same. Those passes are skipped by counting their cycles, so results 
+    // are identical to running them. Interrupts are only taken between calls to run(), so 
+    // this isn't used with accurate interrupt emulation or refresh register emulation.
+    // --------------------------------------------------------------------------------------------
+    
+    /** Skip idle loops? */
+    private final static boolean IDLE_SKIP = Setup.Z80_IDLE_SKIP && Setup.Z80_BLOCK_CACHE && 
+                                             !Setup.ACCURATE_INTERRUPT_EMULATION && 
+                                             !Setup.REFRESH_EMULATION;
+    
+    /** 
+     * Opcodes that can be repeated in an idle loop: 1 = yes, 2 = depends on next byte 
+     * (CB opcodes that don't write to memory, IN A,(n) from the counters or VDP status).
+     * The jumps allowed at the end of a loop are also marked.
+     */
+    private final static byte IDLE_OP[] = {
+
+                                        /*          0  1  2  3  4  5  6  7  8  9  A  B  C  D  E  F */
+                                        /* 0x00 */  1, 1, 0, 1, 1, 1, 1, 1, 0, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x10 */  1, 1, 0, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x20 */  1, 1, 0, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x30 */  1, 1, 0, 1, 0, 0, 0, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x40 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x50 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x60 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x70 */  0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x80 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x90 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xA0 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xB0 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xC0 */  0, 1, 1, 1, 0, 0, 1, 0, 0, 0, 1, 2, 0, 0, 1, 0,
+                                        /* 0xD0 */  0, 1, 1, 0, 0, 0, 1, 0, 0, 0, 1, 2, 0, 0, 1, 0,
+                                        /* 0xE0 */  0, 1, 1, 0, 0, 0, 1, 0, 0, 0, 1, 1, 0, 0, 1, 0,
+                                        /* 0xF0 */  0, 1, 1, 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 0, 1, 0 };
+    
+    /** Start of the loop being watched (-1 = none) */
+    private int idlePc = -1;
+    
+    /** TStates and registers at the end of the last pass through the loop */
+    private int idleTstates, idleAF, idleBC, idleDE, idleHL, idleSP;
+    
+    /** Total cycles skipped in idle loops */
+    public long idleCycles;
+    
+    /**
+     *  Check whether an instruction can be repeated in an idle loop.
+     *
+     *  @param page         ROM page
+     *  @param offset       Offset of instruction
+     *  @param opcode       Opcode hex value
+     *
+     *  @return             true if repeating it has no side effects
+     */
+
+    private final boolean isIdleOp(byte[] page, int offset, int opcode)
+    {
+        switch (IDLE_OP[opcode])
+        {
+            case 1:
+                return true;
+                
+            case 2:
+            {
+                if (offset + 1 >= Setup.PAGE_SIZE)
+                    return false;
+                
+                int n = page[offset + 1] & 0xFF;
+                
+                // Register operations and BIT n,(HL)
+                if (opcode == 0xCB)
+                    return (n & 0x07) != 0x06 || (n & 0xC0) == 0x40;
+                
+                // IN A,(n): V counter, H counter or VDP status
+                n &= 0xC1;
+                return n == 0x40 || n == 0x41 || n == 0x81;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     *  Called after running a block that could be an idle loop. Skips the rest of the loop
+     *  once a pass has left the registers as they were.
+     *
+     *  @param start        Start address of block
+     *  @param prefix       Fixed cycles of all but the last instruction in block
+     *  @param cyclesTo     Cycles to run until
+     */
+
+    private final void skipIdle(int start, int prefix, int cyclesTo)
+    {
+        // Loop exited
+        if (pc != start)
+        {
+            idlePc = -1;
+            return;
+        }
+        
+        int af = (a << 8) | f;
+        
+        int cycle = totalCycles - tstates;
+        int line = cycle / lineCycles;
+        
+        // The last pass must have been within one line, as the next may see a new V counter 
+        // or VDP status
+        if (idlePc == start && af == idleAF && getBC() == idleBC && getDE() == idleDE &&
+            getHL() == idleHL && sp == idleSP && (totalCycles - idleTstates) / lineCycles == line)
+        {
+            int cost = idleTstates - tstates;
+            
+            // Passes that would have run to completion, within this run and this line
+            int remaining = tstates - prefix - cyclesTo;
+            int lineRemaining = (line + 1) * lineCycles - cycle - prefix;
+            
+            if (lineRemaining < remaining)
+                remaining = lineRemaining;
+            
+            if (remaining > 0)
+            {
+                int passes = (remaining - 1) / cost + 1;
+                
+                tstates -= passes * cost;
+                idleCycles += passes * cost;
+            }
+        }
+        
+        idlePc = start;
+        idleTstates = tstates;
+        idleAF = af;
+        idleBC = getBC();
+        idleDE = getDE();
+        idleHL = getHL();
+        idleSP = sp;
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // DECODED INSTRUCTION CACHE
+    //
+    // Each unprefixed instruction is decoded once into a single int holding its opcode, 
+    // immediate operand, length and base cycle cost. Entries are kept per 1K page, so entries 
+    // for a ROM bank stay valid while it is paged out, and come back into use when a frame 
+    // register maps it in again. RAM entries are dropped whenever a byte they cover is written.
+    // --------------------------------------------------------------------------------------------
+    
+    /** Entry for an instruction that runs into the next page and can't be cached */
+    private final static int NOT_CACHED = -1;
+    
+    /** Length of each unprefixed opcode (prefixed opcodes are decoded by the interpreter) */
+    private final static byte OP_LENGTH[] = {
+
+                                        /*          0  1  2  3  4  5  6  7  8  9  A  B  C  D  E  F */
+                                        /* 0x00 */  1, 3, 1, 1, 1, 1, 2, 1, 1, 1, 1, 1, 1, 1, 2, 1,
+                                        /* 0x10 */  2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1,
+                                        /* 0x20 */  2, 3, 3, 1, 1, 1, 2, 1, 2, 1, 3, 1, 1, 1, 2, 1,
+                                        /* 0x30 */  2, 3, 3, 1, 1, 1, 2, 1, 2, 1, 3, 1, 1, 1, 2, 1,
+                                        /* 0x40 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x50 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x60 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x70 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x80 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0x90 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xA0 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xB0 */  1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                        /* 0xC0 */  1, 1, 3, 3, 3, 1, 2, 1, 1, 1, 3, 2, 3, 3, 2, 1,
+                                        /* 0xD0 */  1, 1, 3, 2, 3, 1, 2, 1, 1, 1, 3, 2, 3, 1, 2, 1,
+                                        /* 0xE0 */  1, 1, 3, 1, 3, 1, 2, 1, 1, 1, 3, 1, 3, 1, 2, 1,
+                                        /* 0xF0 */  1, 1, 3, 1, 3, 1, 2, 1, 1, 1, 3, 1, 3, 1, 2, 1 };
+    
+    /** Decoded instructions for each 1K ROM page (created when first mapped) */
+    private int romDecoded[][];
+    
+    /** Decoded instructions for each 1K RAM and SRAM page */
+    private int ramDecoded[][], sramDecoded[][];
+    
+    /** Decoded instructions for each 1K position in the memory map */
+    private int decodedMap[][] = new int[65][];
+    
+    /** Decoded instructions to invalidate on a write to each 1K position (null for ROM) */
+    private int decodedWriteMap[][] = new int[65][];
+    
+    /** Instructions run from the cache, and instructions that had to be decoded (or couldn't be) */
+    public long cacheHits, cacheMisses;
+    
+    /**
+     *  Decode an unprefixed instruction.
+     *
+     *  @param page         Memory page
+     *  @param offset       Offset of instruction in page
+     *
+     *  @return             Opcode | operand << 8 | length << 24 | cycles << 26, or NOT_CACHED
+     */
+
+    private final int decodeOp(byte[] page, int offset)
+    {
+        int opcode = page[offset] & 0xFF;
+        int length = OP_LENGTH[opcode];
+        
+        if (offset + length > Setup.PAGE_SIZE)
+            return NOT_CACHED;
+        
+        int operand = 0;
+        
+        if (length > 1)
+            operand = page[offset + 1] & 0xFF;
+        
+        if (length > 2)
+            operand |= (page[offset + 2] & 0xFF) << 8;
+        
+        return opcode | (operand << 8) | (length << 24) | (OP_STATES[opcode] << 26);
+    }
+    
+    /**
+     *  Run the instruction at pc from the cache, decoding it first if needed.
+     *
+     *  @return             false if the instruction can't be cached and must be interpreted
+     */
+
+    private final boolean runDecoded()
+    {
+        int entries[] = decodedMap[pc >> 10];
+        
+        if (entries == null)
+            return false;
+        
+        int entry = entries[pc & 0x3FF];
+        
+        if (entry == 0)
+        {
+            entry = entries[pc & 0x3FF] = decodeOp(memReadMap[pc >> 10], pc & 0x3FF);
+            cacheMisses++;
+        }
+        else if (entry == NOT_CACHED)
+            cacheMisses++;
+        else
+            cacheHits++;
+        
+        if (entry == NOT_CACHED)
+            return false;
+        
+        int opcode = entry & 0xFF;
+        int length = (entry >> 24) & 3;
+        
+        opStart = tstates;
+        tstates -= entry >>> 26;
+        
+        if (Setup.REFRESH_EMULATION)
+            incR();
+        
+        pc += length;
+        
+        if (length == 1)
+            execute(opcode);
+        else
+            executeImmediate(opcode, (entry >> 8) & 0xFFFF);
+        
+        return true;
+    }
+    
+    /**
+     *  Execute an unprefixed opcode with an immediate operand that has already been read.
+     *  pc points to the next instruction.
+     *
+     *  @param opcode       Opcode hex value
+     *  @param n            Immediate byte, word or displacement
+     */
+
+    private final void executeImmediate(int opcode, int n)
+    {
+        switch (opcode)
+        {
+            case 0x01: c = n & 0xFF; b = n >> 8; break;                         // LD BC,nn
+            case 0x06: b = n; break;                                            // LD B,n
+            case 0x0E: c = n; break;                                            // LD C,n
+            case 0x10: b = (b - 1) & 0xff;                                      // DJNZ (PC+e)
+                       jrDecoded(b != 0, n); break;
+            case 0x11: e = n & 0xFF; d = n >> 8; break;                         // LD DE,nn
+            case 0x16: d = n; break;                                            // LD D,n
+            case 0x18: pc += (byte) n; break;                                   // JR (PC+e)
+            case 0x1E: e = n; break;                                            // LD E,N
+            case 0x20: jrDecoded((f & F_ZERO) == 0, n); break;                  // JR NZ,(PC+e)
+            case 0x21: l = n & 0xFF; h = n >> 8; break;                         // LD HL,nn
+            case 0x22: writeMem(n, l); writeMem(n + 1, h); break;               // LD (nn),HL
+            case 0x26: h = n; break;                                            // LD H,n
+            case 0x28: jrDecoded((f & F_ZERO) != 0, n); break;                  // JR Z,(PC+e)
+            case 0x2A: l = readMem(n); h = readMem(n + 1); break;               // LD HL,(nn)
+            case 0x2E: l = n; break;                                            // LD L,n
+            case 0x30: jrDecoded((f & F_CARRY) == 0, n); break;                 // JR NC,(PC+e)
+            case 0x31: sp = n; break;                                           // LD SP,nn
+            case 0x32: writeMem(n, a); break;                                   // LD (nn),A
+            case 0x36: writeMem(getHL(), n); break;                             // LD (HL),n
+            case 0x38: jrDecoded((f & F_CARRY) != 0, n); break;                 // JR C,(PC+e)
+            case 0x3A: a = readMem(n); break;                                   // LD A,(nn)
+            case 0x3E: a = n; break;                                            // LD A,n
+            case 0xC2: if ((f & F_ZERO) == 0) pc = n; break;                    // JP NZ,(nn)
+            case 0xC3: pc = n; break;                                           // JP (nn)
+            case 0xC4: callDecoded((f & F_ZERO) == 0, n); break;                // CALL NZ (nn)
+            case 0xC6: add_a(n); break;                                         // ADD A,n
+            case 0xCA: if ((f & F_ZERO) != 0) pc = n; break;                    // JP Z,(nn)
+            case 0xCB: doCB(n); break;                                          // CB Opcode
+            case 0xCC: callDecoded((f & F_ZERO) != 0, n); break;                // CALL Z (nn)
+            case 0xCD: push(pc); pc = n; break;                                 // CALL (nn)
+            case 0xCE: adc_a(n); break;                                         // ADC A,n
+            case 0xD2: if ((f & F_CARRY) == 0) pc = n; break;                   // JP NC,(nn)
+            case 0xD3: port.out(n, a); break;                                   // OUT (n),A
+            case 0xD4: callDecoded((f & F_CARRY) == 0, n); break;               // CALL NC (nn)
+            case 0xD6: sub_a(n); break;                                         // SUB n
+            case 0xDA: if ((f & F_CARRY) != 0) pc = n; break;                   // JP C,(nn)
+            case 0xDB: a = port.in(n); break;                                   // IN A,(n)
+            case 0xDC: callDecoded((f & F_CARRY) != 0, n); break;               // CALL C (nn)
+            case 0xDE: sbc_a(n); break;                                         // SBC A,n
+            case 0xE2: if ((f & F_PARITY) == 0) pc = n; break;                  // JP PO,(nn)
+            case 0xE4: callDecoded((f & F_PARITY) == 0, n); break;              // CALL PO (nn)
+            case 0xE6: f = SZP_TABLE[a &= n] | F_HALFCARRY; break;              // AND (n)
+            case 0xEA: if ((f & F_PARITY) != 0) pc = n; break;                  // JP PE,(nn)
+            case 0xEC: callDecoded((f & F_PARITY) != 0, n); break;              // CALL PE (nn)
+            case 0xEE: f = SZP_TABLE[a ^= n]; break;                            // XOR n
+            case 0xF2: if ((f & F_SIGN) == 0) pc = n; break;                    // JP P,(nn)
+            case 0xF4: callDecoded((f & F_SIGN) == 0, n); break;                // CALL P (nn)
+            case 0xF6: f = SZP_TABLE[a |= n]; break;                            // OR n
+            case 0xFA: if ((f & F_SIGN) != 0) pc = n; break;                    // JP M,(nn)
+            case 0xFC: callDecoded((f & F_SIGN) != 0, n); break;                // CALL M (nn)
+            case 0xFE: cp_a(n); break;                                          // CP n
+        }
+    }
+    
+    /**
+     *  Jump Relative, with a displacement that has already been read
+     *
+     *  @param condition        If true jump will be taken
+     *  @param n                Displacement
+     */
+
+    private final void jrDecoded(boolean condition, int n)
+    {
+        if (condition)
+        {
+            pc += (byte) n;
+            tstates-=5;
+        }
+    }
+    
+    /**
+     *  Call, with an address that has already been read
+     *
+     *  @param condition        If true call will be taken
+     *  @param n                Address
+     */
+
+    private final void callDecoded(boolean condition, int n)
+    {
+        if (condition)
+        {
+            push(pc);
+            pc = n;
+            tstates-=7;
+        }
+    }
+    
+    /**
+     *  Drop the decoded instructions that include a byte that has just been written.
+     *
+     *  @param entries      Decoded instructions for page
+     *  @param offset       Offset of byte written
+     */
+
+    private final void invalidateDecoded(int entries[], int offset)
+    {
+        entries[offset] = 0;
+        
+        if (offset > 0) entries[offset - 1] = 0;
+        if (offset > 1) entries[offset - 2] = 0;
+    }
+    
+    /**
+     *  Drop all decoded instructions for a set of pages.
+     *
+     *  @param decoded      Decoded instructions
+     */
+
+    private final void clearDecoded(int decoded[][])
+    {
+        if (decoded == null)
+            return;
+        
+        for (int i = 0; i < decoded.length; i++)
+        {
+            int entries[] = decoded[i];
+            
+            for (int j = 0; j < entries.length; j++)
+                entries[j] = 0;
+        }
+    }
+    
+    /**
+     *  Get the decoded instructions for a ROM page, creating them the first time the page is mapped.
+     *
+     *  @param p            1K ROM page
+     *
+     *  @return             Decoded instructions
+     */
+
+    private final int[] getDecoded(int p)
+    {
+        int entries[] = romDecoded[p];
+        
+        if (entries == null)
+            entries = romDecoded[p] = new int[Setup.PAGE_SIZE];
+        
+        return entries;
+    }
+    
     // --------------------------------------------------------------------------------------------
     // MEMORY ACCESS
     //
@@ -3114,6 +3786,12 @@ public final class Z80
         // Create dummy memory (for invalid writes)
         dummyWrite = new byte[Setup.PAGE_SIZE];
         
+        if (Setup.Z80_DECODE_CACHE)
+        {
+            ramDecoded = new int[ram.length][Setup.PAGE_SIZE];
+            sramDecoded = new int[sram.length][Setup.PAGE_SIZE];
+        }
+        
         // Ignore bad writes in Back To The Future 2
         memReadMap[64] = dummyWrite;
         memWriteMap[64] = dummyWrite;
@@ -3127,7 +3805,22 @@ public final class Z80
 
     public void resetMemory(byte[][] p)
     {
-        if (p != null) rom = p;
+        if (p != null) 
+        {
+            rom = p;
+            
+            if (Setup.Z80_BLOCK_CACHE)
+                romBlocks = new int[rom.length][];
+            
+            if (Setup.Z80_DECODE_CACHE)
+                romDecoded = new int[rom.length][];
+        }
+        
+        if (Setup.Z80_DECODE_CACHE)
+        {
+            clearDecoded(ramDecoded);
+            clearDecoded(sramDecoded);
+        }
         
         frameReg[0] = 0; 
         frameReg[1] = 0;
@@ -3150,15 +3843,14 @@ public final class Z80
         // Map ROM
         for (i = 0; i < 48; i++)
         {
-            memReadMap[i]  = rom[i & 31];
-            memWriteMap[i] = dummyWrite;
+            mapRom(i, i & 31);
+            mapDummyWrite(i);
         }
 
         // Map RAM
         for (i = 48; i < 64; i++)
         {
-            memReadMap[i] = ram[i & 7];
-            memWriteMap[i] = ram[i & 7];
+            mapRam(i, ram, ramDecoded, i & 7);
         }    
     }
 
@@ -3173,6 +3865,15 @@ public final class Z80
     {
         memWriteMap[address >> 10][address & 0x3FF] = (byte) value;
         
+        // Drop decoded instructions this byte could belong to
+        if (Setup.Z80_DECODE_CACHE)
+        {
+            int entries[] = decodedWriteMap[address >> 10];
+            
+            if (entries != null)
+                invalidateDecoded(entries, address & 0x3FF);
+        }
+        
         // Paging registers
         if (address >= 0xFFFC)
             page(address & 3, value);
@@ -3237,6 +3938,9 @@ public final class Z80
     {   
         frameReg[address] = value;
         
+        if (Setup.Z80_BLOCK_CACHE)
+            breakBlock = true;
+        
         switch (address)
         {
             // 0xFFFC: RAM/ROM select register
@@ -3250,8 +3954,8 @@ public final class Z80
                     int offset = (value & 0x04) << 2;
                     
                     // Map 16K of SRAM
-                    for (int i = 32; i < 48; i++)
-                        memReadMap[i] = memWriteMap[i] = sram[offset++];
+                    for (int i = 32; i < 48; i++, offset++)
+                        mapRam(i, sram, sramDecoded, offset);
                     
                     useSRAM = true;
                 }
@@ -3263,8 +3967,8 @@ public final class Z80
                     // Map 16K of ROM
                     for (int i = 32; i < 48; i++)
                     {
-                        memReadMap[i] = rom[p++];
-                        memWriteMap[i] = dummyWrite;
+                        mapRom(i, p++);
+                        mapDummyWrite(i);
                     }
                 }
                 break;
@@ -3276,7 +3980,7 @@ public final class Z80
                 int p = ((value % number_of_pages) << 4) + 1;
                 
                 for (int i = 1; i < 16; i++)
-                    memReadMap[i] = rom[p++];
+                    mapRom(i, p++);
             }
                 break;
                 
@@ -3286,7 +3990,7 @@ public final class Z80
                 int p = (value % number_of_pages) << 4;
                 
                 for (int i = 16; i < 32; i++)
-                    memReadMap[i] = rom[p++];
+                    mapRom(i, p++);
             }
                 break;
                 
@@ -3298,12 +4002,62 @@ public final class Z80
                     int p = (value % number_of_pages) << 4;
 
                     for (int i = 32; i < 48; i++)
-                        memReadMap[i] = rom[p++];
+                        mapRom(i, p++);
                 }                                    
                 break;
         }      
     }
     
+    /**
+     *  Map a 1K ROM page for reading, along with the caches built from it.
+     *
+     *  @param i            Position in memory map
+     *  @param p            1K ROM page
+     */
+
+    private final void mapRom(int i, int p)
+    {
+        memReadMap[i] = rom[p];
+        
+        if (Setup.Z80_BLOCK_CACHE)
+            blockMap[i] = getBlocks(p);
+        
+        if (Setup.Z80_DECODE_CACHE)
+            decodedMap[i] = getDecoded(p);
+    }
+    
+    /**
+     *  Map a 1K RAM page for reading and writing.
+     *
+     *  @param i            Position in memory map
+     *  @param pages        RAM or SRAM pages
+     *  @param decoded      Decoded instructions for these pages (null if not cached)
+     *  @param p            Page to map
+     */
+
+    private final void mapRam(int i, byte[][] pages, int[][] decoded, int p)
+    {
+        memReadMap[i] = memWriteMap[i] = pages[p];
+        blockMap[i] = null;
+        
+        if (Setup.Z80_DECODE_CACHE)
+            decodedMap[i] = decodedWriteMap[i] = decoded[p];
+    }
+    
+    /**
+     *  Send writes to a 1K position in the memory map nowhere.
+     *
+     *  @param i            Position in memory map
+     */
+
+    private final void mapDummyWrite(int i)
+    {
+        memWriteMap[i] = dummyWrite;
+        
+        if (Setup.Z80_DECODE_CACHE)
+            decodedWriteMap[i] = null;
+    }
+    
     public boolean hasUsedSRAM()
     {
         return useSRAM;
@@ -3315,6 +4069,9 @@ public final class Z80
         
         for (int i = 0; i < length; i++)
             System.arraycopy(bytes, i * Setup.PAGE_SIZE, sram[i], 0, Setup.PAGE_SIZE);
+        
+        if (Setup.Z80_DECODE_CACHE)
+            clearDecoded(sramDecoded);
     }
     
 
@@ -3326,6 +4083,13 @@ public final class Z80
     public void setStateMem(int[] state)
     {
         frameReg = state;
+        
+        // RAM contents have been replaced
+        if (Setup.Z80_DECODE_CACHE)
+        {
+            clearDecoded(ramDecoded);
+            clearDecoded(sramDecoded);
+        }
          
         setDefaultMemoryMapping();
         
@@ -0,0 +1,303 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many engines at once, spread across one worker thread per core.
+ * 
+ * Each call to step() runs every engine for a number of frames. Workers take engines from a 
+ * shared counter a few at a time, so uneven engines still keep every core busy, then copy 
+ * each engine's display and RAM into arrays allocated up front. Nothing is allocated per step, 
+ * and engines can be read or changed between steps (e.g. reset for a new episode) from the 
+ * calling thread.
+ * 
+ * Usage: BatchRunner -rom <file> [-engines <n>] [-frames <k>] [-steps <n>] [-threads <n>]
+ */
+
+public class BatchRunner
+{
+    /** Engines taken by a worker at a time */
+    private final static int CHUNK = 4;
+    
+    /** Engines */
+    private final Engine[] engines;
+    
+    /** Display of each engine after the last step */
+    public final int[][] displays;
+    
+    /** RAM of each engine after the last step */
+    public final byte[][] ram;
+    
+    /** Worker threads */
+    private final Thread[] workers;
+    
+    /** Starts and ends each step: the workers and the calling thread are registered */
+    private final Phaser phaser;
+    
+    /** Next engine to run in this step */
+    private final AtomicInteger next = new AtomicInteger();
+    
+    /** Frames to run in this step */
+    private volatile int frames;
+    
+    /** Set to stop the workers */
+    private volatile boolean shutdown;
+    
+    /** First error thrown by an engine in this step */
+    private volatile Throwable error;
+    
+    /**
+     * @param engines   Engines, with hardware initialised and a ROM loaded
+     * @param threads   Number of worker threads (0 for one per core)
+     */
+    
+    public BatchRunner(Engine[] engines, int threads)
+    {
+        this.engines = engines;
+        
+        if (threads <= 0)
+            threads = Runtime.getRuntime().availableProcessors();
+        
+        displays = new int[engines.length][Vdp.SMS_WIDTH * Vdp.SMS_HEIGHT];
+        ram = new byte[engines.length][8 * Setup.PAGE_SIZE];
+        
+        phaser = new Phaser(threads + 1);
+        workers = new Thread[threads];
+        
+        for (int i = 0; i < threads; i++)
+        {
+            workers[i] = new Thread("BatchRunner-" + i)
+            {
+                public void run()
+                {
+                    work();
+                }
+            };
+            
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+    
+    /**
+     * Create engines, all running the same ROM.
+     * 
+     * @param rom       ROM file
+     * @param count     Number of engines
+     * 
+     * @return          Engines
+     */
+    
+    public static Engine[] createEngines(String rom, int count)
+    {
+        Engine[] engines = new Engine[count];
+        
+        for (int i = 0; i < count; i++)
+        {
+            engines[i] = new Engine(null);
+            engines[i].initHardware();
+            engines[i].initRom(rom);
+        }
+        
+        return engines;
+    }
+    
+    /**
+     * @param index     Engine index
+     * 
+     * @return          Engine, only to be used between steps
+     */
+    
+    public final Engine getEngine(int index)
+    {
+        return engines[index];
+    }
+    
+    /**
+     * @return          Number of engines
+     */
+    
+    public final int size()
+    {
+        return engines.length;
+    }
+    
+    /**
+     * Run every engine for a number of frames, and gather the results. Returns once all the 
+     * engines have finished.
+     * 
+     * @param frameCount    Number of frames
+     */
+    
+    public final synchronized void step(int frameCount)
+    {
+        if (shutdown)
+            throw new IllegalStateException("BatchRunner has been shut down");
+        
+        frames = frameCount;
+        error = null;
+        next.set(0);
+        
+        // Start, then wait for every worker to finish
+        phaser.arriveAndAwaitAdvance();
+        phaser.arriveAndAwaitAdvance();
+        
+        if (error != null)
+            throw new RuntimeException("Engine failed: " + error);
+    }
+    
+    /**
+     * Stop the worker threads.
+     */
+    
+    public final synchronized void shutdown()
+    {
+        if (!shutdown)
+        {
+            shutdown = true;
+            phaser.arriveAndDeregister();
+        }
+    }
+    
+    private final void work()
+    {
+        while (true)
+        {
+            phaser.arriveAndAwaitAdvance();
+            
+            if (shutdown)
+            {
+                phaser.arriveAndDeregister();
+                return;
+            }
+            
+            try
+            {
+                int start;
+                
+                while ((start = next.getAndAdd(CHUNK)) < engines.length)
+                {
+                    int end = Math.min(start + CHUNK, engines.length);
+                    
+                    for (int i = start; i < end; i++)
+                        run(i);
+                }
+            }
+            catch (Throwable t)
+            {
+                error = t;
+            }
+            
+            phaser.arriveAndAwaitAdvance();
+        }
+    }
+    
+    /**
+     * Run one engine and gather its display and RAM.
+     */
+    
+    private final void run(int index)
+    {
+        Engine engine = engines[index];
+        
+        for (int i = frames; i-- != 0;)
+            engine.emulateNextFrame();
+        
+        System.arraycopy(engine.display, 0, displays[index], 0, displays[index].length);
+        
+        byte[][] pages = engine.z80.ram;
+        byte[] dest = ram[index];
+        
+        for (int i = 0; i < pages.length; i++)
+            System.arraycopy(pages[i], 0, dest, i * Setup.PAGE_SIZE, Setup.PAGE_SIZE);
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Command Line
+    // --------------------------------------------------------------------------------------------
+    
+    public static void main(String[] args)
+    {
+        Profile.select(JavaGear.getArgumentValue(args, "-profile"));
+        
+        String rom = JavaGear.getArgumentValue(args, "-rom");
+        
+        if (rom == null || !new java.io.File(rom).isFile())
+        {
+            System.out.println("Usage: BatchRunner -rom <file> [-engines <n>] [-frames <k>] " +
+                               "[-steps <n>] [-threads <n>]");
+            System.exit(1);
+        }
+        
+        int count = getIntArgument(args, "-engines", 64);
+        int frameCount = getIntArgument(args, "-frames", 10);
+        int steps = getIntArgument(args, "-steps", 60);
+        int threads = getIntArgument(args, "-threads", 0);
+        
+        BatchRunner runner = new BatchRunner(createEngines(rom, count), threads);
+        
+        long startTime = System.currentTimeMillis();
+        
+        for (int i = 0; i < steps; i++)
+            runner.step(frameCount);
+        
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        long total = (long) count * frameCount * steps;
+        
+        System.out.println(count + " engines on " + runner.workers.length + " threads: " + 
+                           total + " frames in " + elapsed + "ms (" + 
+                           ((total * 1000L) / elapsed) + " fps)");
+        
+        runner.shutdown();
+    }
+    
+    private static int getIntArgument(String[] args, String arg, int defaultValue)
+    {
+        try
+        {
+            String value = JavaGear.getArgumentValue(args, arg);
+            
+            if (value != null)
+                return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {}
+        
+        return defaultValue;
+    }
+}
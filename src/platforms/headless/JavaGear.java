@@ -0,0 +1,114 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+/**
+ * Headless entry point.
+ * 
+ * Runs a ROM flat out for a number of frames, with no display or sound device, and reports 
+ * the achieved frame rate.
+ * 
+ * Usage: JavaGear -rom <file> [-frames <n>] [-profile fast|accurate]
+ */
+
+public class JavaGear
+{
+    /** Default number of frames to emulate */
+    public final static int DEFAULT_FRAMES = 600;
+        
+    public static void main(String[] args)
+    {                 
+        String rom = getArgumentValue(args, "-rom");
+        String frames = getArgumentValue(args, "-frames");
+        
+        // Must be selected before the emulator classes are initialised
+        Profile.select(getArgumentValue(args, "-profile"));
+        
+        if (rom == null || !new java.io.File(rom).isFile())
+        {
+            System.out.println("Usage: JavaGear -rom <file> [-frames <n>] [-profile fast|accurate]");
+            System.exit(1);
+        }
+        
+        int frameCount = DEFAULT_FRAMES;
+        
+        try
+        {
+            if (frames != null)
+                frameCount = Integer.parseInt(frames);
+        }
+        catch (NumberFormatException e) {}
+        
+        Engine engine = new Engine(null);
+        engine.initHardware();
+        engine.initRom(rom);
+        
+        long startTime = System.currentTimeMillis();
+        
+        for (int i = 0; i < frameCount; i++)
+            engine.emulateNextFrame();
+        
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        
+        System.out.println(Profile.NAMES[Profile.get()] + " profile");
+        System.out.println(frameCount + " frames in " + elapsed + "ms (" + 
+                           ((frameCount * 1000L) / elapsed) + " fps)");
+        
+        if (Setup.Z80_DECODE_CACHE)
+        {
+            long lookups = Math.max(1, engine.z80.cacheHits + engine.z80.cacheMisses);
+            
+            System.out.println("Decoded instruction cache: " + engine.z80.cacheHits + " hits, " + 
+                               engine.z80.cacheMisses + " misses (" + 
+                               ((engine.z80.cacheHits * 100) / lookups) + "% hit rate)");
+        }
+        
+        if (Setup.Z80_IDLE_SKIP)
+            System.out.println("Idle loops: " + engine.z80.idleCycles + " cycles skipped");
+    }
+    
+    public static String getArgumentValue(String[] args, String arg)
+    {
+        for (int i = 0; i < args.length-1; i++)
+        {
+            String s = args[i];
+            
+            if (s.equalsIgnoreCase(arg))
+                return args[i+1]; 
+        }      
+        return null;
+    }
+}
@@ -0,0 +1,309 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+/**
+ * Headless platform.
+ * 
+ * Runs the emulation core without loading any AWT, Swing or javax.sound classes, so it can 
+ * be used on servers and in containers with no display. Nothing is presented: callers drive 
+ * Engine.emulateNextFrame() themselves and read Engine.display and Engine.audioBuffer directly.
+ */
+
+public class Platform
+{   
+    /** Debug output (console) */
+    public final static boolean DEBUG = false;
+    
+    /** Shares the J2SE code paths (zip loading, file access) */
+    public final static int ID = Engine.J2SE;
+ 
+    // --------------------------------------------------------------------------------------------
+    // Default Emulator Settings
+    // --------------------------------------------------------------------------------------------
+    
+    /** Default frameskip value */
+    public final static int DEFAULT_FRAMESKIP = 0;
+    
+    /** Turn throttling on by default? */
+    public final static boolean DEFAULT_THROTTLE = false;
+    
+    /** Default minimum sleep value */
+    public final static int DEFAULT_MIN_SLEEP = 0;
+    
+    /** Turn scale on by default? */
+    public final static boolean DEFAULT_SCALE = false;
+    
+    /** Call Thread.yield() per rendered frame */
+    public final static boolean THREAD_YIELD = false;
+    
+    /** Thread Priority */
+    public static int THREAD_PRIORITY = Thread.NORM_PRIORITY;
+    
+    // --------------------------------------------------------------------------------------------
+    // Default Key Mappings (no keyboard, so these are never matched)
+    // --------------------------------------------------------------------------------------------
+    
+    public static int
+        K_MENU_UP_MAP = -1,
+        K_MENU_DOWN_MAP = -1,
+        K_MENU_SELECT_MAP = -1,
+    
+        K_UP_MAP = -1,
+        K_DOWN_MAP = -1,
+        K_LEFT_MAP = -1,
+        K_RIGHT_MAP = -1,
+    
+        K_UL_MAP = -1,
+        K_UR_MAP = -1,
+        K_DL_MAP = -1,
+        K_DR_MAP = -1,
+        
+        K_FIRE1_MAP = -1,
+        K_FIRE2_MAP = -1,
+        K_START_MAP = -1,
+        
+        K_MENU_MAP = -1;
+    
+    // --------------------------------------------------------------------------------------------
+    // Sound Output
+    // --------------------------------------------------------------------------------------------
+    
+    /** Sound is generated into Engine.audioBuffer, but never played */
+    public final static boolean SUPPORTS_SOUND = true;
+    
+    /** Sample Rate */
+    public final static int SAMPLE_RATE = 22050;
+    
+    // --------------------------------------------------------------------------------------------
+    // Rendering
+    // --------------------------------------------------------------------------------------------
+    
+    /** Virtual screen width & height (unscaled emulated display) */
+    public static int screen_width = Vdp.SMS_WIDTH, screen_height = Vdp.SMS_HEIGHT;
+    
+    // --------------------------------------------------------------------------------------------
+    
+    
+    public Platform()
+    {        
+    }
+    
+    public void exit()
+    {           
+        // Nothing to tear down: the caller owns the JVM
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Platform Specific Calls
+    // --------------------------------------------------------------------------------------------
+    
+    public void platformFunction(Engine e, int function)
+    {
+        // No throttle, audio device or lightgun cursor when headless
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Sound Output
+    // --------------------------------------------------------------------------------------------
+      
+    public void audioOutput(byte[] buffer)
+    {
+        // Buffer is left in Engine.audioBuffer for the caller to consume
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Screen Rendering
+    // --------------------------------------------------------------------------------------------
+    
+    public void doRepaint()
+    {
+        // Frame is left in Engine.render for the caller to consume
+    }
+    
+    public String getKeyNm(int key)
+    {
+       return String.valueOf(key);
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // File Loading Routines
+    // --------------------------------------------------------------------------------------------
+    
+    /**
+     * Get resource that is INSIDE the JAR file
+     * 
+     * @param s     Resource to grab
+     * @return
+     */
+    
+    public BufferedInputStream getResourceAsStream(String s)
+    {
+        try
+        {
+            return new BufferedInputStream(JavaGear.class.getResourceAsStream(s));
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    } 
+    
+    /**
+     * Get resource that is OUTSIDE the JAR file
+     * 
+     * @param s     File to grab
+     * @return
+     */
+    
+    public BufferedInputStream getResourceOutsideJar(String s)
+    {
+        try
+        {
+            return new BufferedInputStream(new FileInputStream(s));
+        }
+        catch (Exception e)
+        {
+            if (DEBUG)
+                System.out.println("Failed to get resource: "+s);
+            return null;
+        }        
+    }
+    
+    public byte[][] getZip(Engine engine, String s)
+    {
+        try
+        {
+            BufferedInputStream bis = getResourceOutsideJar(s);
+            
+            if (bis == null || !getExtension(s).equals("zip"))
+                return null;
+            
+            ZipInputStream zip = new ZipInputStream(bis);
+                
+            // Get next entry from the zip file
+            ZipEntry entry = zip.getNextEntry();
+
+            // cycle through zip until we find an SMS/GG file
+            while (entry != null)
+            {
+                String extension2 = getExtension(entry.getName());
+                    
+                // SMS/GG File Found
+                if ((extension2.equals("sms")) || (extension2.equals("gg")))
+                {
+                    // Set Emulation Mode
+                    if (extension2.equals("sms"))
+                        engine.setSMS();
+                    else
+                        engine.setGG();
+
+                    byte[][] pages = engine.loadROM(new BufferedInputStream(zip), (int) entry.getSize());
+                    zip.close();
+                    return pages;
+                }
+                    
+                // File is not SMS/GG File
+                zip.closeEntry();
+                entry = zip.getNextEntry();
+            }
+            zip.close();
+        }
+        // Zip file kaput
+        catch (Exception e)
+        {
+            if (DEBUG)
+                e.printStackTrace();
+        }
+        
+        return null;
+    }
+        
+    public int getResourceSize(String s)
+    {
+        return (int) new File(s).length();
+    }
+    
+    /**
+     *  Strip an extension from a file
+     *
+     *  @param filename     Filename to strip
+     *
+     *  @return             Extension of file
+     */
+
+    private String getExtension(String filename)
+    {
+        int i = filename.lastIndexOf('.');
+        if (i > 0 && i < filename.length() - 1)
+            return filename.substring(i+1).toLowerCase();
+        return "";
+    }
+    
+    // --------------------------------------------------------------------------------------------
+    // Settings
+    // --------------------------------------------------------------------------------------------
+    
+    public static void save(String name, byte[] data)
+        throws Exception
+    {
+        new File("settings").mkdir();
+
+        FileOutputStream fos = new FileOutputStream(new File("settings", new File(name).getName()));
+        fos.write(data);
+        fos.close();        
+    }
+    
+    public static byte[] load(String name)
+        throws Exception
+    {
+        File f = new File("settings", new File(name).getName());
+        byte[] data = new byte[(int) f.length()];
+        
+        FileInputStream fis = new FileInputStream(f);
+        fis.read(data);
+        fis.close();  
+        
+        return data;
+    }  
+}
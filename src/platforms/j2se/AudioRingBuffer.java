@@ -0,0 +1,157 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+/**
+ * Single producer, single consumer ring buffer for audio samples.
+ * 
+ * The emulation thread writes and the audio thread reads, without locks. Each side only 
+ * updates its own position, and publishes it with a volatile write after the data it covers, 
+ * so the other side always sees the data before the position that makes it available.
+ */
+
+public class AudioRingBuffer
+{
+    /** Samples */
+    private final byte[] buffer;
+    
+    /** Capacity - 1, the capacity being a power of two */
+    private final int mask;
+    
+    /** Total bytes written, updated by the producer only */
+    private volatile long writePos;
+    
+    /** Total bytes read, updated by the consumer only */
+    private volatile long readPos;
+    
+    /**
+     * @param capacity  Capacity in bytes, rounded up to a power of two
+     */
+    
+    public AudioRingBuffer(int capacity)
+    {
+        int size = 1;
+        
+        while (size < capacity)
+            size <<= 1;
+        
+        buffer = new byte[size];
+        mask = size - 1;
+    }
+    
+    /**
+     * @return  Capacity in bytes
+     */
+    
+    public final int capacity()
+    {
+        return buffer.length;
+    }
+    
+    /**
+     * @return  Bytes waiting to be read
+     */
+    
+    public final int available()
+    {
+        return (int) (writePos - readPos);
+    }
+    
+    /**
+     * Write as many bytes as there is space for. Producer only.
+     * 
+     * @param src       Source
+     * @param offset    Offset into source
+     * @param length    Number of bytes
+     * 
+     * @return          Number of bytes written
+     */
+    
+    public final int write(byte[] src, int offset, int length)
+    {
+        long w = writePos;
+        int free = buffer.length - (int) (w - readPos);
+        
+        if (length > free)
+            length = free;
+        
+        int start = (int) w & mask;
+        int first = Math.min(length, buffer.length - start);
+        
+        System.arraycopy(src, offset, buffer, start, first);
+        System.arraycopy(src, offset + first, buffer, 0, length - first);
+        
+        writePos = w + length;
+        return length;
+    }
+    
+    /**
+     * Read as many bytes as are available. Consumer only.
+     * 
+     * @param dest      Destination
+     * @param offset    Offset into destination
+     * @param length    Maximum number of bytes
+     * 
+     * @return          Number of bytes read
+     */
+    
+    public final int read(byte[] dest, int offset, int length)
+    {
+        long r = readPos;
+        int available = (int) (writePos - r);
+        
+        if (length > available)
+            length = available;
+        
+        int start = (int) r & mask;
+        int first = Math.min(length, buffer.length - start);
+        
+        System.arraycopy(buffer, start, dest, offset, first);
+        System.arraycopy(buffer, 0, dest, offset + first, length - first);
+        
+        readPos = r + length;
+        return length;
+    }
+    
+    /**
+     * Discard everything waiting to be read. Consumer only, or while neither side is running.
+     */
+    
+    public final void clear()
+    {
+        readPos = writePos;
+    }
+}
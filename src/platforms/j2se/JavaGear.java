@@ -45,6 +45,9 @@ public class JavaGear
         
     public static void main(String[] args)
     {                 
+        // Select the accuracy profile, before any emulator classes are initialised
+        Profile.select(getArgumentValue(args, "-profile"));
+        
         // Default to full mode
         Platform.mode = Platform.MODE_FULL;
         
@@ -60,6 +60,10 @@ public class JavaGearApplet extends JApplet
         String width = getParameter("width");
         String height = getParameter("height");
         String video = getParameter("video");
+        String profile = getParameter("profile");
+        
+        // Accuracy profile has been specified
+        Profile.select(profile);
         
         
         // Rom has been specified
@@ -72,7 +76,7 @@ public class JavaGearApplet extends JApplet
         if (video != null)
         {
             video = video.toLowerCase();           
-            Vdp.videoMode = video.equals("pal") ? Vdp.PAL : Vdp.NTSC;
+            Engine.videoMode = video.equals("pal") ? Vdp.PAL : Vdp.NTSC;
         }
         
         if (width != null && height != null)
@@ -122,7 +126,8 @@ public class JavaGearApplet extends JApplet
     
     public void destroy()
     {
-        Engine.running = false;
+        if (Engine.engine != null)
+            Engine.engine.running = false;
         Engine.engine = null;
         engine = null;
         applet = null;
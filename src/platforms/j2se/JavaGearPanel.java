@@ -76,12 +76,12 @@ public abstract class JavaGearPanel extends Component
     
     public void mousePressed(MouseEvent evt)
     {
-        Engine.setLightGunPos(evt.getX(), evt.getY());
+        Engine.engine.setLightGunPos(evt.getX(), evt.getY());
     }
     
     public void mouseReleased(MouseEvent evt)
     {
-        Engine.setLightGunPos(-1, -1);
+        Engine.engine.setLightGunPos(-1, -1);
     }
     
 
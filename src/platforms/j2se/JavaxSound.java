@@ -2,7 +2,7 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.SourceDataLine;
-import javax.swing.*;
+import java.util.concurrent.locks.LockSupport;
 
 /*
     This file is part of JavaGear.
@@ -42,22 +42,43 @@ import javax.swing.*;
 */
 
 /**
- * - fix audio
- * - add flag to use a dedicated thread for sound - shouldn't be needed
+ * J2SE sound output.
+ * 
+ * The emulation thread hands each frame of samples to a lock-free ring buffer and never waits 
+ * for the sound device. A dedicated audio thread drains the buffer into the SourceDataLine, 
+ * parking while there is nothing to play. If the buffer is full the new samples are dropped 
+ * (an overrun); if the line plays out everything it had (an underrun), it is counted too.
  *
  * Copyright (c) 2019 Federico Berti
  */
 public class JavaxSound
 {
-    private static boolean USE_AUDIO_THREAD = false;
+    /** Size of the SourceDataLine buffer in bytes */
+    private final static int LINE_BUFFER_SIZE = 1000;
+    
+    /** Size of the ring buffer in bytes (a few frames of samples) */
+    private final static int RING_BUFFER_SIZE = 4096;
+    
+    /** Bytes passed to the line at a time */
+    private final static int CHUNK_SIZE = 256;
+    
+    /** Longest the audio thread parks for before checking whether it has been stopped */
+    private final static long PARK_NANOS = 20000000L;
 
     /** J2SE Sound Output */
     private SourceDataLine line;
-    private int bufferSize = 1000;
-    private volatile boolean stopSound = false;
-    private volatile boolean dataAvailable = false;
-    private volatile byte[] soundBuffer = new byte[0];
+    
+    /** Samples waiting to be played */
+    private final AudioRingBuffer ring = new AudioRingBuffer(RING_BUFFER_SIZE);
+    
     private Thread soundThread;
+    private volatile boolean stopSound;
+    
+    /** Set while the audio thread is parked, or about to park */
+    private volatile boolean waiting;
+    
+    /** Number of times the line ran dry, and number of frames of samples dropped */
+    private volatile long underruns, overruns;
     
     public void audioStart()
     {
@@ -68,12 +89,22 @@ public class JavaxSound
                 // AudioFormat(float sample_rate(hz), int sampleSizeInBits, int channels, boolean signed, boolean bigEndian)
                 AudioFormat af = new AudioFormat(Engine.SAMPLE_RATE, 8, 1, true, false);
                 line = (SourceDataLine)AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, af));
-                line.open(af, bufferSize);
+                line.open(af, LINE_BUFFER_SIZE);
                 line.start();
-                if(USE_AUDIO_THREAD) {
-                    soundThread = new Thread(getSoundRunnable());
-                    soundThread.start();
-                }
+                
+                ring.clear();
+                stopSound = false;
+                
+                soundThread = new Thread("JavaxSound")
+                {
+                    public void run()
+                    {
+                        play();
+                    }
+                };
+                soundThread.setDaemon(true);
+                soundThread.setPriority(Thread.MAX_PRIORITY);
+                soundThread.start();
             }
         }
         catch (Exception e)
@@ -87,59 +118,97 @@ public class JavaxSound
     {
         if (line != null)
         {
-            if(USE_AUDIO_THREAD) {
-                stopSound = true;
-                try {
-                    soundThread.join();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            stopSound = true;
+            LockSupport.unpark(soundThread);
+            
+            try 
+            {
+                soundThread.join();
+            } 
+            catch (InterruptedException e) 
+            {
+                Thread.currentThread().interrupt();
             }
+            
+            soundThread = null;
+            
             line.stop();
             line.close();
             line = null;
+            
+            if (Platform.DEBUG)
+                System.out.println("Audio: " + underruns + " underruns, " + overruns + " overruns");
         }
     }
 
-    public void audioOutput(byte[] buffer){
-        if(USE_AUDIO_THREAD){
-            audioOutputThread(buffer);
-            return;
+    /**
+     * Queue a frame of samples. Called from the emulation thread, and never blocks.
+     * 
+     * @param buffer    Samples
+     */
+    
+    public void audioOutput(byte[] buffer)
+    {
+        if (line != null)
+        {
+            if (ring.write(buffer, 0, buffer.length) < buffer.length)
+                overruns++;
+            
+            if (waiting)
+                LockSupport.unpark(soundThread);
         }
-        writeBuffer(buffer);
     }
-
-    private void writeBuffer(byte[] buffer){
-        if (line != null) {
-            int start = 0;
-            int len = buffer.length;
-            do {
-                int count = line.write(buffer, start, len);
-                start += count;
-            } while (start < len);
-        }
+    
+    /**
+     * @return  Number of times the sound device ran out of samples
+     */
+    
+    public long getUnderruns()
+    {
+        return underruns;
     }
-
     
-    public void audioOutputThread(byte[] buffer)
+    /**
+     * @return  Number of frames of samples dropped because the ring buffer was full
+     */
+    
+    public long getOverruns()
     {
-        if (line != null)
+        return overruns;
+    }
+    
+    /**
+     * Audio thread: move samples from the ring buffer to the line until stopped.
+     */
+    
+    private void play()
+    {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        boolean playing = false;
+        
+        while (!stopSound)
         {
-            int len = buffer.length;
-            if(soundBuffer.length != len){
-                soundBuffer = new byte[len];
+            int count = ring.read(chunk, 0, chunk.length);
+            
+            if (count == 0)
+            {
+                // Check again after setting the flag, so a write in between isn't missed
+                waiting = true;
+                
+                if (ring.available() == 0 && !stopSound)
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                
+                waiting = false;
+                continue;
             }
-            System.arraycopy(buffer, 0, soundBuffer, 0, len);
-            dataAvailable = true;
+            
+            // Line has played out everything it had
+            if (playing && line.available() >= line.getBufferSize())
+                underruns++;
+            
+            // Only blocks this thread
+            line.write(chunk, 0, count);
+            playing = true;
         }
     }
-
-    private Runnable getSoundRunnable(){
-        return () -> {
-            do {
-                while (!dataAvailable);
-                writeBuffer(soundBuffer);
-            } while (!stopSound);
-        };
-    }
-}
\ No newline at end of file
+}
@@ -254,15 +254,53 @@ public class Platform
         }
     }
     
+    /**
+     * Close the application and start it again with another accuracy profile, reloading the 
+     * current ROM. The emulator classes are loaded again, specialised for the new profile.
+     * 
+     * @param profile   Profile to use
+     */
+    
+    public void restart(int profile)
+    {
+        if (sound != null)
+            sound.audioStop();
+        
+        Engine.engine.stop(true);
+        UIMenuBar.saveMenuOptions();
+        Engine.engine.saveSRAM();
+        
+        String[] args = (isCartLoaded && Engine.useRomFile != null) ?
+            new String[] {"-profile", Profile.NAMES[profile], "-rom", Engine.useRomFile} :
+            new String[] {"-profile", Profile.NAMES[profile]};
+        
+        jframe.setVisible(false);
+        jframe.dispose();
+        
+        try
+        {
+            ProfileLoader.launch(args);
+        }
+        catch (Exception e)
+        {
+            if (DEBUG)
+                e.printStackTrace();
+            
+            System.exit(1);
+        }
+    }
+    
     public void resizeWindow(int size)
     {
-        if (Engine.emuWidth == 0)
-            Engine.emuWidth = Vdp.SMS_WIDTH;
-        if (Engine.emuHeight == 0)
-            Engine.emuHeight = Vdp.SMS_HEIGHT;
+        Engine e = Engine.engine;
         
-        screen_width = Engine.emuWidth * size;
-        screen_height = Engine.emuHeight * size;
+        if (e.emuWidth == 0)
+            e.emuWidth = Vdp.SMS_WIDTH;
+        if (e.emuHeight == 0)
+            e.emuHeight = Vdp.SMS_HEIGHT;
+        
+        screen_width = e.emuWidth * size;
+        screen_height = e.emuHeight * size;
         
         sp.changeSize(screen_width, screen_height);
         ui.setSize(new Dimension(screen_width, screen_height));
@@ -274,11 +312,7 @@ public class Platform
     
     public void initJ2SEApplicationVersion(Engine e)
     {
-        e.vdp = new Vdp(Engine.display);
-        if (SUPPORTS_SOUND)
-            e.psg = new SN76489();
-        e.ports = new Ports(e.vdp, e.psg);
-        e.z80 = new Z80(e.ports);            
+        e.initHardware();
     }
     
     // --------------------------------------------------------------------------------------------
@@ -401,12 +435,12 @@ public class Platform
     public synchronized void keyPressed(KeyEvent evt)
     {
         Engine.keyCode = evt.getKeyCode();
-        Engine.keyPress(Engine.getKeyMap(Engine.keyCode));
+        Engine.engine.keyPress(Engine.getKeyMap(Engine.keyCode));
     }
     
     public synchronized void keyReleased(KeyEvent evt)
     {
-        Engine.keyRelease(Engine.getKeyMap(evt.getKeyCode()));
+        Engine.engine.keyRelease(Engine.getKeyMap(evt.getKeyCode()));
     }
     
     public void keyTyped(KeyEvent evt)
@@ -0,0 +1,104 @@
+/*
+    This file is part of JavaGear.
+    
+    Copyright (c) 2002-2008 Chris White
+    All rights reserved. 
+    
+    Redistribution and use of this code or any derivative works are permitted
+    provided that the following conditions are met: 
+    
+    * Redistributions may not be sold, nor may they be used in a commercial
+    product or activity. 
+    
+    * Redistributions that are modified from the original source must include the
+    complete source code, including the source code for all components used by a
+    binary built from the modified sources. However, as a special exception, the
+    source code distributed need not include anything that is normally distributed
+    (in either source or binary form) with the major components (compiler, kernel,
+    and so on) of the operating system on which the executable runs, unless that
+    component itself accompanies the executable.
+    
+    * Redistributions must reproduce the above copyright notice, this list of
+    conditions and the following disclaimer in the documentation and/or other
+    materials provided with the distribution. 
+    
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Loads a fresh copy of the emulator classes, so the emulator can be started again with a 
+ * different accuracy profile.
+ * 
+ * The accuracy settings are static finals, fixed when Setup is first initialised, and compiled 
+ * by the JIT as constants. A new set of classes (Setup, Z80, Vdp, Ports and everything else in 
+ * the default package) is specialised for the new profile in the same way, without the old 
+ * profile's code or any test of the profile while emulating.
+ */
+
+public class ProfileLoader extends URLClassLoader
+{
+    public ProfileLoader(URL[] urls, ClassLoader parent)
+    {
+        super(urls, parent);
+    }
+    
+    protected synchronized Class loadClass(String name, boolean resolve)
+        throws ClassNotFoundException
+    {
+        // Java classes come from the parent as usual
+        if (name.indexOf('.') != -1)
+            return super.loadClass(name, resolve);
+        
+        // Our own classes are loaded again, rather than shared with the parent
+        Class c = findLoadedClass(name);
+        
+        if (c == null)
+        {
+            try
+            {
+                c = findClass(name);
+            }
+            catch (ClassNotFoundException e)
+            {
+                c = super.loadClass(name, false);
+            }
+        }
+        
+        if (resolve)
+            resolveClass(c);
+        
+        return c;
+    }
+    
+    /**
+     * Start a new copy of JavaGear with its own classes.
+     * 
+     * @param args          Command line arguments, including the profile to use
+     * 
+     * @throws Exception    If the classes can't be loaded
+     */
+    
+    public static void launch(String[] args)
+        throws Exception
+    {
+        URL[] urls = {ProfileLoader.class.getProtectionDomain().getCodeSource().getLocation()};
+        
+        ProfileLoader loader = new ProfileLoader(urls, ProfileLoader.class.getClassLoader());
+        
+        Class main = loader.loadClass("JavaGear");
+        main.getMethod("main", new Class[] {String[].class}).invoke(null, new Object[] {args});
+    }
+}
@@ -68,13 +68,15 @@ public final class ScreenPanel extends JavaGearPanel
         // Create Graphics Context for Component
         if (gfx == null) gfx = getGraphics();
         
-        fast_image.update(Engine.render, Engine.renderOffset, Engine.renderWidth, Engine.renderHeight, Engine.scaledWidth);
+        Engine e = Engine.engine;
+        
+        fast_image.update(e.render, e.renderOffset, e.renderWidth, e.renderHeight, e.scaledWidth);
 
         fast_image.paint(gfx,
-                Engine.renderX, Engine.renderY,
-                Engine.renderX + Engine.renderWidth, Engine.renderY + Engine.renderHeight,
+                e.renderX, e.renderY,
+                e.renderX + e.renderWidth, e.renderY + e.renderHeight,
                 0, 0,
-                Engine.renderWidth, Engine.renderHeight);
+                e.renderWidth, e.renderHeight);
     }
 
 
@@ -86,7 +88,7 @@ public final class ScreenPanel extends JavaGearPanel
 
     public void paint(Graphics g)
     {
-        if (!Platform.isCartLoaded || !Engine.running)
+        if (!Platform.isCartLoaded || Engine.engine == null || !Engine.engine.running)
         {
             g.setColor(Color.BLACK);
             g.fillRect(0, 0, this.getWidth(), this.getHeight());
@@ -91,6 +91,9 @@ public class UIMenuBar
         SYSTEM_TV_NTSC = "NTSC",
         SYSTEM_TV_PAL = "PAL",
         SYSTEM_HARD_RESET = "Hard Reset",
+        SYSTEM_ACCURACY = "Accuracy",
+        SYSTEM_ACCURACY_FAST = "Fast",
+        SYSTEM_ACCURACY_ACCURATE = "Accurate (Slower)",
         
         SETTINGS = "Settings",
         SETTINGS_SOUND = "Enable Sound",
@@ -159,7 +162,7 @@ public class UIMenuBar
         // ----------------------------------------------------------------------------------------
         
         int usOption = Ports.isDomestic() ? 0 : 1;
-        int tvOption = Vdp.videoMode == Vdp.NTSC ? 0 : 1;
+        int tvOption = Engine.videoMode == Vdp.NTSC ? 0 : 1;
 
         menuBar.add(makeMenu(SYSTEM,
                 new Object[]
@@ -168,6 +171,8 @@ public class UIMenuBar
                         makeGroup(new String[] {SYSTEM_REGION_US , SYSTEM_REGION_JAP}, usOption), this),
                     makeMenu(SYSTEM_TV_TYPE,
                         makeGroup(new String[] {SYSTEM_TV_NTSC , SYSTEM_TV_PAL}, tvOption), this),
+                    makeMenu(SYSTEM_ACCURACY,
+                        makeGroup(new String[] {SYSTEM_ACCURACY_FAST , SYSTEM_ACCURACY_ACCURATE}, Profile.get()), this),
                     null,
                     SYSTEM_HARD_RESET,
                 }, this));
@@ -219,7 +224,7 @@ public class UIMenuBar
             DataInputStream inData = new DataInputStream(in); 
              
             // System
-            Vdp.videoMode = inData.readInt();           
+            Engine.videoMode = inData.readInt();           
             Ports.setDomestic(inData.readBoolean());
             
             // Settings
@@ -259,7 +264,7 @@ public class UIMenuBar
             DataOutputStream outData = new DataOutputStream(out);  
 
             // System
-            outData.writeInt(Vdp.videoMode);           
+            outData.writeInt(Engine.videoMode);           
             outData.writeBoolean(Ports.isDomestic());
             
             // Settings
@@ -320,7 +325,8 @@ public class UIMenuBar
             if (rom != null)
             {
                 Platform.isCartLoaded = true;
-                engine.initRom(rom.getAbsolutePath());
+                Engine.useRomFile = rom.getAbsolutePath();
+                engine.initRom(Engine.useRomFile);
                 engine.resizeWindow(windowSize); // resize for game gear or sms display
                 
                 // Stop lightgun by default
@@ -400,12 +406,14 @@ public class UIMenuBar
         else if (arg == SYSTEM_TV_NTSC)
         {
             if (Platform.isCartLoaded) pauseEmulator();
+            Engine.videoMode = Vdp.NTSC;
             engine.setVideoTiming(Vdp.NTSC);
             resumeEmulator();
         }
         else if (arg == SYSTEM_TV_PAL)
         {
             if (Platform.isCartLoaded) pauseEmulator();
+            Engine.videoMode = Vdp.PAL;
             engine.setVideoTiming(Vdp.PAL);
             resumeEmulator();
         } 
@@ -416,6 +424,14 @@ public class UIMenuBar
             engine.reset();
             resumeEmulator();
         }
+        else if (arg == SYSTEM_ACCURACY_FAST || arg == SYSTEM_ACCURACY_ACCURATE)
+        {
+            int profile = (arg == SYSTEM_ACCURACY_FAST) ? Profile.FAST : Profile.ACCURATE;
+            
+            // Restart with classes for the new profile
+            if (profile != Profile.get())
+                engine.restart(profile);
+        }
         
         // ----------------------------------------------------------------------------------------
         // Settings Menu Actions
@@ -46,6 +46,10 @@ public class JavaGear extends MIDlet
     public JavaGear()
     {
         display = Display.getDisplay(this);
+        
+        // Accuracy profile from the JAD file
+        Profile.select(getAppProperty("JavaGear-Profile"));
+        
         engine = new Engine(this);
     }
 
@@ -71,11 +75,10 @@ public class JavaGear extends MIDlet
      */
     public void destroyApp(boolean unconditional)
     {
-        Engine.running = false;
-        
         // Save settings before exit
         if (engine != null)
         {
+            engine.running = false;
             engine.saveSettings();
             engine.saveSRAM();
         }
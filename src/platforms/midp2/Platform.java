@@ -194,12 +194,13 @@ public class Platform extends GameCanvas
         switch (Engine.state)
         {
             case Engine.S_EMULATE:
+                Engine e = Engine.engine;
                 g.drawRGB(
-                        Engine.render, 
-                        Engine.renderOffset, 
-                        Engine.scaledWidth, 
-                        Engine.renderX, Engine.renderY,
-                        Engine.renderWidth, Engine.renderHeight, false);
+                        e.render, 
+                        e.renderOffset, 
+                        e.scaledWidth, 
+                        e.renderX, e.renderY,
+                        e.renderWidth, e.renderHeight, false);
                 
                 if (Setup.DEBUG_TIMING)
                 {
@@ -210,7 +211,7 @@ public class Platform extends GameCanvas
                     g.fillRect(0, y, screen_width, off);
                     
                     g.setColor(0xFFFFFF);
-                    g.drawString("Z80: "+Engine.z80Time+"  Draw: "+Engine.drawTime, 0, y, Graphics.TOP | Graphics.LEFT);
+                    g.drawString("Z80: "+e.z80Time+"  Draw: "+e.drawTime, 0, y, Graphics.TOP | Graphics.LEFT);
                 }
                 break;
                 
@@ -233,12 +234,12 @@ public class Platform extends GameCanvas
     protected void keyPressed(int key) 
     {
         Engine.keyCode = key;
-        Engine.keyPress(Engine.getKeyMap(key));
+        Engine.engine.keyPress(Engine.getKeyMap(key));
     }
     
     protected void keyReleased(int key)
     {
-        Engine.keyRelease(Engine.getKeyMap(key));
+        Engine.engine.keyRelease(Engine.getKeyMap(key));
     }
     
     public String getKeyNm(int key)
@@ -251,13 +252,13 @@ public class Platform extends GameCanvas
     public void pointerPressed(int x, int y)
     {
         if (Setup.LIGHTGUN)
-            Engine.setLightGunPos(x, y);
+            Engine.engine.setLightGunPos(x, y);
     }
     
     public void pointerReleased(int x, int y)
     {
         if (Setup.LIGHTGUN)
-            Engine.setLightGunPos(-1, -1);
+            Engine.engine.setLightGunPos(-1, -1);
     }
         
     // --------------------------------------------------------------------------------------------